@@ -0,0 +1,223 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Benchmarks for Gitlet, the mini version-control system. Run inside a
+ *  repository as java gitlet.Benchmark NAME [ROUNDS]. Nothing in the
+ *  repository is changed.
+ *  @author Yonas/Juno
+ */
+public class Benchmark {
+
+    /** Usage: java gitlet.Benchmark codec|checkout [ROUNDS]. "codec" saves
+     * and loads every commit of the log, in memory, ROUNDS times (10 by
+     * default) with Java serialization and with the binary codec, and
+     * reports the time and bytes each takes. "checkout" writes every file
+     * of the latest commit into a scratch directory in .gitlet, ROUNDS
+     * times, by reading each blob into memory and writing it out, as
+     * checkout used to, and by each materialization strategy. Times are
+     * reported over all files and over the plain blobs alone, the only
+     * ones the strategies apply to; the others are inflated by every
+     * method alike. */
+    public static void main(String... args) throws Exception {
+        if (args.length == 0 || args.length > 2
+                || (args.length == 2 && !args[1].matches("\\d+"))) {
+            System.out.println(
+                    "Usage: java gitlet.Benchmark codec|checkout [ROUNDS]");
+            return;
+        }
+        int rounds = args.length == 2 ? Integer.parseInt(args[1]) : ROUNDS;
+        switch (args[0]) {
+        case "codec":
+            codec(rounds);
+            break;
+        case "checkout":
+            checkout(rounds);
+            break;
+        default:
+            System.out.println("No benchmark with that name exists.");
+        }
+    }
+
+    /** Compares Java serialization with the codec over the commits of the
+     * log, ROUNDS times. */
+    static void codec(int rounds) throws Exception {
+        String[] paths = Commit.logFiles();
+        if (paths == null) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        List<Commit> commits = new ArrayList<Commit>();
+        for (String path : paths) {
+            commits.add(Commit.load(path));
+        }
+        byte[][] serialized = new byte[commits.size()][];
+        byte[][] encoded = new byte[commits.size()][];
+        long[] times = new long[4];
+        for (int r = 0; r < rounds; r += 1) {
+            long start = System.nanoTime();
+            for (int i = 0; i < serialized.length; i += 1) {
+                serialized[i] = serialize(commits.get(i));
+            }
+            long mid = System.nanoTime();
+            for (byte[] bytes : serialized) {
+                try (ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(bytes))) {
+                    in.readObject();
+                }
+            }
+            times[0] += mid - start;
+            times[1] += System.nanoTime() - mid;
+            start = System.nanoTime();
+            for (int i = 0; i < encoded.length; i += 1) {
+                encoded[i] = Codec.encode(Commit.MAGIC, commits.get(i)::write);
+            }
+            mid = System.nanoTime();
+            for (byte[] bytes : encoded) {
+                Commit.read(Codec.open(bytes, Commit.MAGIC));
+            }
+            times[2] += mid - start;
+            times[3] += System.nanoTime() - mid;
+        }
+        System.out.println(commits.size() + " commits, " + rounds + " rounds");
+        report("serialization", times[0], times[1], serialized);
+        report("codec", times[2], times[3], encoded);
+    }
+
+    /** Compares ways of writing the files of the latest commit of the log,
+     * ROUNDS times each. */
+    static void checkout(int rounds) throws Exception {
+        String[] paths = Commit.logFiles();
+        if (paths == null) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Commit latest = null;
+        for (String path : paths) {
+            Commit commit = Commit.load(path);
+            if (latest == null || commit.getMillis() > latest.getMillis()) {
+                latest = commit;
+            }
+        }
+        List<String> shas = new ArrayList<String>(
+                latest.getBlobsMap().values());
+        File[] plains = new File[shas.size()];
+        HashMap<File, Boolean> writable = new HashMap<File, Boolean>();
+        long bytes = 0;
+        for (int i = 0; i < shas.size(); i += 1) {
+            plains[i] = ObjectStore.plainFile(shas.get(i));
+            if (plains[i] != null) {
+                writable.put(plains[i], plains[i].canWrite());
+                bytes += plains[i].length();
+            }
+        }
+        System.out.println(shas.size() + " files, " + writable.size()
+                + " plain (" + bytes + " bytes), " + rounds + " rounds");
+        File scratch = Files.createTempDirectory(
+                Paths.get(".gitlet"), "bench").toFile();
+        try {
+            time("heap", rounds, shas, plains, scratch, (i, dest) -> {
+                Utils.writeContents(dest, ObjectStore.read(shas.get(i)));
+                return true;
+            });
+            time("automatic", rounds, shas, plains, scratch, (i, dest) -> {
+                ObjectStore.copyTo(shas.get(i), dest);
+                return true;
+            });
+            for (Materializer.Strategy strategy
+                     : Materializer.Strategy.values()) {
+                time(strategy.toString().toLowerCase(), rounds, shas, plains,
+                        scratch, (i, dest) -> {
+                        if (plains[i] == null) {
+                            ObjectStore.copyTo(shas.get(i), dest);
+                            return true;
+                        }
+                        return Materializer.copy(plains[i], dest, strategy);
+                    });
+            }
+        } finally {
+            for (File file : scratch.listFiles()) {
+                file.delete();
+            }
+            scratch.delete();
+            for (File plain : writable.keySet()) {
+                plain.setWritable(writable.get(plain));
+            }
+        }
+    }
+
+    /** A way of writing a file of a commit. */
+    interface Method {
+        /** Writes the I-th file to DEST, and returns false if this way
+         * does not work here. */
+        boolean write(int i, File dest) throws IOException;
+    }
+
+    /** Writes each blob of SHAS, whose plain files are PLAINS (null for
+     * blobs that are not plain), into SCRATCH with METHOD, ROUNDS times,
+     * and reports the time it took as NAME, over all files and over the
+     * plain ones alone. */
+    private static void time(String name, int rounds, List<String> shas,
+                             File[] plains, File scratch, Method method)
+        throws IOException {
+        long all = 0;
+        long plain = 0;
+        int plainFiles = 0;
+        for (int r = 0; r < rounds; r += 1) {
+            for (int i = 0; i < shas.size(); i += 1) {
+                File dest = new File(scratch, name + "-" + r + "-" + i);
+                long start = System.nanoTime();
+                boolean works = method.write(i, dest);
+                long time = System.nanoTime() - start;
+                if (!works) {
+                    System.out.printf("%-14s not supported here%n", name);
+                    return;
+                }
+                all += time;
+                if (plains[i] != null) {
+                    plain += time;
+                    plainFiles += 1;
+                }
+            }
+        }
+        int files = rounds * shas.size();
+        System.out.printf("%-14s %8.1f ms  %8.1f us/file   plain only "
+                + "%8.1f ms  %8.1f us/file%n", name, all / 1e6,
+                files == 0 ? 0 : all / 1e3 / files, plain / 1e6,
+                plainFiles == 0 ? 0 : plain / 1e3 / plainFiles);
+    }
+
+    /** Returns COMMIT written with Java serialization. */
+    private static byte[] serialize(Commit commit) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(commit);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Prints the SAVE and LOAD times, in nanoseconds, and the total size
+     * of RECORDS for the format NAME. */
+    private static void report(String name, long save, long load,
+                               byte[][] records) {
+        long size = 0;
+        for (byte[] record : records) {
+            size += record.length;
+        }
+        System.out.printf("%-14s save %8.1f ms  load %8.1f ms  %10d bytes%n",
+                name, save / 1e6, load / 1e6, size);
+    }
+
+    /** Number of rounds run when none is given. */
+    private static final int ROUNDS = 10;
+}
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/** Checkout writer for Gitlet, the mini version-control system. Replaces
+ *  and deletes a batch of working files all or nothing. Every new file is
+ *  first materialized into .gitlet/checkout, MAX_IN_FLIGHT at a time, on
+ *  virtual threads where the JVM has them and on a pool of threads
+ *  otherwise, since on slow volumes the time goes in opening and closing
+ *  files rather than in moving bytes. Only once all of them are written is
+ *  the working directory touched: files to be deleted, then files to be
+ *  replaced, are moved aside, and the new files renamed into place. If any
+ *  step fails, the moves are undone in reverse order, so the working
+ *  directory is left as it was.
+ *  @author Yonas/Juno
+ */
+class CheckoutWriter {
+
+    /** Makes each of the paths in WRITES hold the blob it is mapped to and
+     * deletes the paths in DELETES, below the working directory. Returns
+     * true if that was done, or false, with nothing changed, if it could
+     * not be. */
+    static boolean apply(Map<String, String> writes, List<String> deletes) {
+        ArrayList<String> paths = new ArrayList<String>(writes.keySet());
+        File[] temps = new File[paths.size()];
+        boolean done = false;
+        try {
+            stage(paths, writes, temps);
+            done = swap(paths, temps, deletes);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(FAILED);
+        } finally {
+            for (File temp : temps) {
+                if (temp != null) {
+                    temp.delete();
+                }
+            }
+        }
+        return done;
+    }
+
+    /** Writes the blob WRITES maps each of PATHS to into a new temporary
+     * file, recorded in TEMPS, with at most MAX_IN_FLIGHT written at once.
+     * Throws an exception if any of them could not be written, once all of
+     * them have finished. */
+    private static void stage(List<String> paths, Map<String, String> writes,
+                              File[] temps) throws IOException {
+        TEMP_DIR.mkdirs();
+        for (int i = 0; i < temps.length; i += 1) {
+            temps[i] = File.createTempFile("blob-", null, TEMP_DIR);
+        }
+        if (temps.length < 2) {
+            for (int i = 0; i < temps.length; i += 1) {
+                ObjectStore.copyTo(writes.get(paths.get(i)), temps[i]);
+            }
+            return;
+        }
+        ExecutorService executor = executor();
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+        for (int i = 0; i < temps.length; i += 1) {
+            String sha = writes.get(paths.get(i));
+            File temp = temps[i];
+            inFlight.acquireUninterruptibly();
+            results.add(executor.submit(() -> {
+                try {
+                    ObjectStore.copyTo(sha, temp);
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        }
+        executor.shutdown();
+        String failure = null;
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                failure = String.valueOf(e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = "interrupted";
+            }
+        }
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    /** Moves the files in DELETES, then those of PATHS that exist, aside,
+     * and renames each of TEMPS into place as the path with the same
+     * index. Directories left empty by the deletions are removed. If a
+     * move fails, undoes all of them and returns false; files that could
+     * not be put back stay in the backup directory, which is named. */
+    private static boolean swap(List<String> paths, File[] temps,
+                                List<String> deletes) throws IOException {
+        File backups = Files.createTempDirectory(
+                TEMP_DIR.toPath(), "backup-").toFile();
+        ArrayDeque<File[]> moves = new ArrayDeque<File[]>();
+        int n = 0;
+        try {
+            for (String path : deletes) {
+                File file = new File(Main.WORKING_DIR, path);
+                if (file.exists()) {
+                    move(file, new File(backups, Integer.toString(n)), moves);
+                    n += 1;
+                    for (File parent = file.getParentFile();
+                         !parent.equals(Main.WORKING_DIR) && parent.delete();
+                         parent = parent.getParentFile()) {
+                        continue;
+                    }
+                }
+            }
+            for (String path : paths) {
+                File file = new File(Main.WORKING_DIR, path);
+                if (file.isDirectory()) {
+                    throw new IOException(path + " is a directory");
+                } else if (file.exists()) {
+                    move(file, new File(backups, Integer.toString(n)), moves);
+                    n += 1;
+                }
+            }
+            for (int i = 0; i < temps.length; i += 1) {
+                move(temps[i], new File(Main.WORKING_DIR, paths.get(i)),
+                        moves);
+            }
+        } catch (IOException e) {
+            boolean restored = true;
+            while (!moves.isEmpty()) {
+                File[] m = moves.pop();
+                try {
+                    Utils.makeParent(m[0]);
+                    Files.move(m[1].toPath(), m[0].toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException undo) {
+                    restored = false;
+                }
+            }
+            if (restored) {
+                backups.delete();
+                System.out.println(FAILED);
+            } else {
+                System.out.println("IOException while checking out files; "
+                        + "the files it replaced are in " + backups + ".");
+            }
+            return false;
+        }
+        for (int i = 0; i < n; i += 1) {
+            new File(backups, Integer.toString(i)).delete();
+        }
+        backups.delete();
+        return true;
+    }
+
+    /** Moves FROM to TO, making TO's directory if needed, and pushes the
+     * move onto MOVES so it can be undone. Renames atomically where the
+     * file system allows it. */
+    private static void move(File from, File to, ArrayDeque<File[]> moves)
+        throws IOException {
+        Utils.makeParent(to);
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        moves.push(new File[] {from, to});
+    }
+
+    /** Returns an executor that runs each task on a virtual thread, or, on
+     * JVMs without them, on a pool of MAX_IN_FLIGHT threads. */
+    private static ExecutorService executor() {
+        try {
+            Method virtual = Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(MAX_IN_FLIGHT);
+        }
+    }
+
+    /** Message printed when a checkout is undone. */
+    private static final String FAILED =
+        "IOException while checking out files; nothing was changed.";
+    /** Most files materialized at the same time. */
+    private static final int MAX_IN_FLIGHT = 32;
+    /** Directory of files being checked out and of the files they
+     * replace. */
+    private static final File TEMP_DIR = new File("./.gitlet/checkout");
+}
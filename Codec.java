@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/** Binary encoding for Gitlet, the mini version-control system. Commits,
+ *  the branch table, the head and the current branch are each kept in a
+ *  file that starts with a magic word naming its kind and the format
+ *  version, followed by fields written with DataOutputStream. Strings are
+ *  written as their length in bytes and their UTF-8 bytes, with length -1
+ *  for null. Files are read and written whole, in one call each.
+ *  Repositories written with Java serialization are converted once, the
+ *  first time they are opened.
+ *  @author Yonas/Juno
+ */
+class Codec {
+
+    /** The fields of a record, written after its header. */
+    interface Body {
+        /** Writes the fields to OUT. */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Returns the bytes of a record of the kind MAGIC whose fields are
+     * written by BODY. */
+    static byte[] encode(int magic, Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(magic);
+            out.writeInt(VERSION);
+            body.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Writes a record of the kind MAGIC whose fields are written by BODY
+     * to FILE, replacing what it held. */
+    static void save(File file, int magic, Body body) throws IOException {
+        Files.write(file.toPath(), encode(magic, body));
+    }
+
+    /** Writes a record as save does, but to a temporary file in the same
+     * directory that is synced and then renamed over FILE, so a crash
+     * leaves either the old FILE or the new one, never part of either.
+     * The directory is synced before the next state-log record or
+     * checkpoint, which may depend on the new FILE. */
+    static void saveSynced(File file, int magic, Body body)
+        throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(encode(magic, body));
+            out.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        StateLog.added(file.getAbsoluteFile().getParentFile());
+    }
+
+    /** Syncs the directory DIR, making the names just added to it or
+     * renamed into it durable. Systems that cannot open a directory make
+     * its entries durable without being asked, so failing to open one is
+     * not an error. */
+    static void syncDir(File dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /** Returns a stream over the fields of the record of the kind MAGIC
+     * in BYTES. Throws IllegalArgumentException if BYTES is not such a
+     * record. */
+    static DataInputStream open(byte[] bytes, int magic) throws IOException {
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < 2 * Integer.BYTES || in.readInt() != magic) {
+            throw new IllegalArgumentException("unknown record format");
+        } else if (in.readInt() != VERSION) {
+            throw new IllegalArgumentException("unknown record version");
+        }
+        return in;
+    }
+
+    /** Returns a stream over the fields of the record of the kind MAGIC in
+     * FILE. */
+    static DataInputStream open(File file, int magic) throws IOException {
+        return open(Files.readAllBytes(file.toPath()), magic);
+    }
+
+    /** Writes S, which may be null, to OUT. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Returns a string written by writeString, read from IN. */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Writes MAP, which may be null, to OUT. */
+    static void writeMap(DataOutputStream out, Map<String, String> map)
+        throws IOException {
+        if (map == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    /** Reads a map written by writeMap from IN into MAP and returns MAP,
+     * or returns null if a null map was written. */
+    static <M extends Map<String, String>> M readMap(DataInputStream in,
+                                                     M map)
+        throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        for (int i = 0; i < size; i += 1) {
+            String key = readString(in);
+            map.put(key, readString(in));
+        }
+        return map;
+    }
+
+    /** Returns true if BYTES were written with Java serialization. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xff) == 0xac
+            && (bytes[1] & 0xff) == 0xed;
+    }
+
+    /** Returns the object written to FILE with Java serialization. */
+    static Object readObject(File file) throws IOException,
+            ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            return in.readObject();
+        }
+    }
+
+    /** Rewrites every commit of the log that was saved with Java
+     * serialization in the binary format, under the same name. Throws
+     * IllegalArgumentException, leaving the rest of the log as it was, if
+     * a commit cannot be read. */
+    static void migrateLog() throws IOException {
+        String[] paths = Commit.logFiles();
+        if (paths == null) {
+            return;
+        }
+        for (String path : paths) {
+            byte[] bytes = Files.readAllBytes(new File(LOG_DIR, path).toPath());
+            if (isSerialized(bytes)) {
+                Commit commit = Commit.load(path);
+                if (commit == null) {
+                    throw new IllegalArgumentException("cannot convert "
+                            + "commit " + path + " from Java serialization");
+                }
+                commit.save();
+            }
+        }
+    }
+
+    /** Version of every record format. */
+    static final int VERSION = 1;
+    /** Directory of the commits. */
+    private static final File LOG_DIR = new File("./.gitlet/log");
+}
@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+
+/** Garbage collector for Gitlet, the mini version-control system. Marks
+ *  every commit reachable from the given roots, following both parents of
+ *  merges, together with the trees and blobs they hold, and then sweeps
+ *  the commits in .gitlet/log and the objects in the store that were not
+ *  marked. Anything changed within the grace period is kept, and commits
+ *  kept that way are marked from too, so their files are never lost. The
+ *  indexes over the log are rebuilt once commits have left it.
+ *  @author Yonas/Juno
+ */
+class Collector {
+
+    /** Collects the garbage left beside the commits ROOTS and the staged
+     * blobs STAGED, of which null entries are ignored. Files changed at or
+     * after CUTOFF, in milliseconds since the epoch, are kept. If DRYRUN,
+     * only prints what would be removed. */
+    static void collect(Collection<String> roots, Collection<String> staged,
+                        long cutoff, boolean dryRun) {
+        HashSet<String> live = new HashSet<String>(staged);
+        ArrayDeque<String> pending = new ArrayDeque<String>(roots);
+        String[] names = Commit.logFiles();
+        names = names == null ? new String[0] : names;
+        for (String name : names) {
+            if (new File(LOG_DIR, name).lastModified() >= cutoff) {
+                pending.add(idOf(name));
+            }
+        }
+        HashSet<String> commits = new HashSet<String>();
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            if (!commits.add(id)) {
+                continue;
+            }
+            Commit commit = Commit.load(id + SUFFIX);
+            if (commit == null) {
+                continue;
+            }
+            if (commit.hasTree()) {
+                FileTree.reach(commit.getTreeId(), live);
+            } else {
+                live.addAll(commit.getBlobsMap().values());
+            }
+            for (String parent : new String[] {commit.getParentId(),
+                    commit.getMergeParentId()}) {
+                if (parent != null) {
+                    pending.add(parent);
+                }
+            }
+        }
+        int deadCommits = 0;
+        long bytes = 0;
+        long files = 0;
+        for (String name : names) {
+            File file = new File(LOG_DIR, name);
+            if (!commits.contains(idOf(name))) {
+                deadCommits += 1;
+                bytes += file.length();
+                files += 1;
+                if (!dryRun) {
+                    file.delete();
+                }
+            }
+        }
+        live.remove(null);
+        long[] objects = ObjectStore.prune(live, cutoff, dryRun);
+        bytes += objects[1];
+        files += objects[2];
+        System.out.println((dryRun ? "Would remove " : "Removed ")
+                + deadCommits + " commits and " + objects[0] + " objects: "
+                + bytes + " bytes in " + files + " files.");
+        if (!dryRun && deadCommits > 0) {
+            CommitGraph.clear();
+            CommitIndex.rebuild();
+            MessageIndex.rebuild();
+            CommitJournal.rebuild();
+        }
+    }
+
+    /** Returns the id of the commit saved in the log as NAME. */
+    private static String idOf(String name) {
+        if (name.endsWith(SUFFIX)) {
+            return name.substring(0, name.length() - SUFFIX.length());
+        }
+        return name;
+    }
+
+    /** Directory of saved commits. */
+    private static final File LOG_DIR = new File("./.gitlet/log");
+    /** Suffix of the names of saved commits. */
+    private static final String SUFFIX = ".ser";
+}
@@ -4,68 +4,121 @@ import java.sql.Timestamp;
 import java.util.Date;
 import java.util.HashMap;
 import static gitlet.Utils.*;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
 
 public class Commit implements Serializable {
 
-    /** Creates a new Commit object given BLOBS, MYPARENT, MSG. */
-    Commit(HashMap<String, String> blobs, Commit myParent, String msg, String bran) {
-        Date currTime = new Date();
-        this.timeStamp = new Timestamp(currTime.getTime());
-        timeStamp.setNanos(0);
-        time = timeStamp.toString().substring(0 , timeLength);
+    /** Creates a new Commit object given the id of its tree TREE, MYPARENT,
+     * MSG. */
+    Commit(String tree, Commit myParent, String msg, String bran) {
+        this(tree, myParent, null, msg, bran);
+    }
+
+    /** Creates a new merge Commit object given the id of its tree TREE,
+     * MYPARENT, the MERGEPARENT that was merged in, MSG and BRAN.
+     * MERGEPARENT is null for an ordinary commit. */
+    Commit(String tree, Commit myParent, Commit mergeParent,
+           String msg, String bran) {
+        setTime(new Date().getTime());
+        this.parentId = myParent.getShaCode();
         this.parent = myParent;
-        String filesSha1 = "";
-        for (String sha1Key : blobs.keySet()) {
-            filesSha1 += sha1Key;
+        String filesSha1 = tree;
+        if (mergeParent != null) {
+            this.mergeParentId = mergeParent.getShaCode();
+            filesSha1 += mergeParentId;
         }
         this.message = msg;
-        this.shaCode = sha1(filesSha1, parent.getShaCode(),
-                message, time).substring(0, shaCodeLength);
-        this.blobsMap = blobs;
+        this.shaCode = sha1(filesSha1, parentId, message, time);
+        this.treeId = tree;
         this.branch = bran;
     }
 
     /** Creates a new commit given a MSG. */
     Commit(String msg) {
-        Date currTime = new Date();
-        this.timeStamp = new Timestamp(currTime.getTime());
-        timeStamp.setNanos(0);
-        time = timeStamp.toString().substring(0 , timeLength);
-        this.shaCode = sha1(msg, time).substring(0, shaCodeLength);
+        setTime(new Date().getTime());
+        this.shaCode = sha1(msg, time);
         this.message = msg;
-        this.blobsMap = new HashMap<String, String>();
+        this.treeId = FileTree.write(new HashMap<String, String>());
         this.branch = "master";
     }
 
+    /** Creates a commit whose fields are filled in by read. */
+    private Commit() {
+    }
+
+    /** Sets the time of this commit to MILLIS, dropping the fraction of a
+     * second. */
+    private void setTime(long millis) {
+        this.millis = millis - Math.floorMod(millis, 1000L);
+        time = new Timestamp(this.millis).toString().substring(0, timeLength);
+    }
+
     /** Updates the bytes of the current commit. */
     void save() {
         try {
             File commit = new File("./.gitlet/log/" + shaCode + ".ser");
-            FileOutputStream fileOut = new FileOutputStream(commit);
-            ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);
-            objectOut.writeObject(this);
+            Codec.saveSynced(commit, MAGIC, this::write);
         } catch (IOException e) {
             String msg = "IOException while saving " + shaCode;
             System.out.println(msg);
         }
     }
 
-    /** returns the commit object given its SHA code. */
+    /** Writes the fields of this commit to OUT. */
+    void write(DataOutputStream out) throws IOException {
+        Codec.writeString(out, shaCode);
+        Codec.writeString(out, parentId);
+        Codec.writeString(out, mergeParentId);
+        Codec.writeString(out, message);
+        Codec.writeString(out, branch);
+        out.writeLong(getMillis());
+        Codec.writeString(out, treeId);
+        Codec.writeMap(out, blobsMap);
+    }
+
+    /** Returns a commit read from IN, in the form write writes. */
+    static Commit read(DataInputStream in) throws IOException {
+        Commit commit = new Commit();
+        commit.shaCode = Codec.readString(in);
+        commit.parentId = Codec.readString(in);
+        commit.mergeParentId = Codec.readString(in);
+        commit.message = Codec.readString(in);
+        commit.branch = Codec.readString(in);
+        commit.setTime(in.readLong());
+        commit.treeId = Codec.readString(in);
+        commit.blobsMap = Codec.readMap(in, new HashMap<String, String>());
+        return commit;
+    }
+
+    /** Returns the file names of the commits in the log, leaving out any
+     * temporary file a crash left behind, or null if there is no log. */
+    static String[] logFiles() {
+        return new File("./.gitlet/log").list((dir, name) ->
+                name.endsWith(".ser"));
+    }
+
+    /** returns the commit object given its SHA code. Commits saved with
+     * Java serialization, before the binary format, are read as well. */
     public static Commit load(String sha) {
         Commit commitObject = null;
         File commitFile = new File("./.gitlet/log/" + sha);
         if (commitFile.exists()) {
             try {
-                FileInputStream fileIn = new FileInputStream(commitFile);
-                ObjectInputStream objectIn = new ObjectInputStream(fileIn);
-                commitObject = (Commit) objectIn.readObject();
+                byte[] bytes = Files.readAllBytes(commitFile.toPath());
+                if (!Codec.isSerialized(bytes)) {
+                    return read(Codec.open(bytes, MAGIC));
+                }
+                try (ObjectInputStream objectIn = new ObjectInputStream(
+                        new ByteArrayInputStream(bytes))) {
+                    commitObject = (Commit) objectIn.readObject();
+                }
             } catch (IOException e) {
                 String msg = "IOException while loading the commit.";
                 System.out.println(msg);
@@ -77,6 +130,29 @@ public class Commit implements Serializable {
         return commitObject;
     }
 
+    /** Reads a commit saved with Java serialization from IN. Commits saved
+     * before parents were kept by id hold the parent commit itself, whose
+     * id becomes parentId. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        shaCode = (String) fields.get("shaCode", null);
+        parentId = (String) fields.get("parentId", null);
+        mergeParentId = (String) fields.get("mergeParentId", null);
+        message = (String) fields.get("message", null);
+        branch = (String) fields.get("branch", null);
+        treeId = (String) fields.get("treeId", null);
+        blobsMap = (HashMap<String, String>) fields.get("blobsMap", null);
+        time = (String) fields.get("time", null);
+        millis = fields.get("millis", 0L);
+        if (parentId == null
+                && fields.getObjectStreamClass().getField("parent") != null) {
+            Commit old = (Commit) fields.get("parent", null);
+            parentId = old == null ? null : old.shaCode;
+        }
+    }
+
     /** Accessor method for commit's shacode. */
     public String getShaCode() {
         return shaCode;
@@ -87,8 +163,24 @@ public class Commit implements Serializable {
         return branch;
     }
 
-    /** Accessor method for commit's Parent Commit. */
+    /** Accessor method for the SHA code of this commit's parent, or null
+     * for the initial commit. */
+    public String getParentId() {
+        return parentId;
+    }
+
+    /** Accessor method for the SHA code of the commit that was merged into
+     * this one, or null if this is not a merge commit. */
+    public String getMergeParentId() {
+        return mergeParentId;
+    }
+
+    /** Accessor method for commit's Parent Commit. The parent is read from
+     * the log the first time it is asked for and kept afterwards. */
     public Commit getParent() {
+        if (parent == null && parentId != null) {
+            parent = load(parentId + ".ser");
+        }
         return parent;
     }
 
@@ -97,33 +189,77 @@ public class Commit implements Serializable {
         return time;
     }
 
+    /** Returns the time of this commit in milliseconds since the epoch.
+     * Commits saved with Java serialization only kept the time string. */
+    long getMillis() {
+        if (millis == 0) {
+            millis = Timestamp.valueOf(time).getTime();
+        }
+        return millis;
+    }
+
     /** Accessor method for commit's message. */
     public String getMessage() {
         return message;
     }
 
-    /** Accessor method for this commit's BlobsMap. */
+    /** Returns the id of the tree of this commit. Commits made before
+     * trees have their flat blobsMap turned into a tree instead. */
+    public String getTreeId() {
+        if (treeId == null) {
+            treeId = FileTree.write(blobsMap);
+        }
+        return treeId;
+    }
+
+    /** Returns true if this commit was saved with a tree, rather than
+     * with the flat blobsMap of older repositories. */
+    public boolean hasTree() {
+        return treeId != null;
+    }
+
+    /** Accessor method for this commit's BlobsMap: every file path mapped
+     * to the SHA-1 of its contents. It is read from the commit's tree the
+     * first time it is asked for and kept afterwards. */
     public HashMap<String, String> getBlobsMap() {
-        return blobsMap;
+        if (files == null) {
+            files = treeId == null ? blobsMap : FileTree.flatten(treeId);
+        }
+        return files;
     }
 
-    /** The Timestamp. */
-    private Timestamp timeStamp;
-    /** The previous commit. */
-    private Commit parent;
+    /** First word of a saved commit. */
+    static final int MAGIC = 0x47434d54;
+    /** Version of the serialized form of a commit, which older
+     * repositories still hold. */
+    private static final long serialVersionUID = -5294126601402511739L;
+
+    /** The SHA code of the previous commit. Only the id is saved, so each
+     * file in the log holds a single commit rather than its whole history. */
+    private String parentId;
+    /** The previous commit, loaded lazily from the log. */
+    private transient Commit parent;
+    /** The SHA code of the head of the branch merged into this commit. */
+    private String mergeParentId;
     /** The specific hashcode of this commit. */
     private String shaCode;
     /** The time that this commit was made. */
     private String message;
 
     private String branch;
+    /** The id of the tree of files that this commit contains, or null for
+     * a commit made before trees. */
+    private String treeId;
     /** Hashmap of the files that this commit contains. The key is the
-     * SHA-1 and the value is the file name. */
+     * file path and the value is the SHA-1 of its contents. Only commits
+     * made before trees save it. */
     private HashMap<String, String> blobsMap;
-    /** My time. */
+    /** The files of this commit, once read from its tree. */
+    private transient HashMap<String, String> files;
+    /** My time, as shown by log. */
     private String time;
+    /** My time in milliseconds since the epoch. */
+    private long millis;
     /** Limit for time  string length. */
     private final int timeLength = 19;
-    /** Limit for sha code length. */
-    private final int shaCodeLength = 6;
 }
@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/** Commit-graph for Gitlet, the mini version-control system. Keeps one
+ *  compact record per commit in .gitlet/commit-graph: the commit's id, the
+ *  positions of its parents in the file and its generation number. Records
+ *  are only ever appended, and a commit is always written after its
+ *  parents, so positions never change once assigned. The file is not
+ *  synced: a record torn by a crash is cut off when the file is read, and
+ *  a commit missing from the graph has the graph rebuilt from the log.
+ *  @author Yonas/Juno
+ */
+class CommitGraph {
+
+    /** Creates an empty commit-graph. */
+    private CommitGraph() {
+        ids = new ArrayList<String>();
+        positions = new HashMap<String, Integer>();
+        parents1 = new int[INITIAL_SIZE];
+        parents2 = new int[INITIAL_SIZE];
+        generations = new int[INITIAL_SIZE];
+    }
+
+    /** Returns the commit-graph of the current repository, reading it from
+     * disk the first time it is needed. Repositories made before the graph
+     * existed get it rebuilt from the log. */
+    static CommitGraph get() {
+        if (graph == null) {
+            graph = new CommitGraph();
+            if (GRAPH_FILE.exists()) {
+                graph.read();
+            } else {
+                graph.rebuild();
+            }
+        }
+        return graph;
+    }
+
+    /** Throws the commit-graph away, to be rebuilt from the log the next
+     * time it is needed. Used once commits have left the log. */
+    static void clear() {
+        GRAPH_FILE.delete();
+        graph = null;
+    }
+
+    /** Adds COMMIT to the graph and appends its record to the file. Its
+     * parents must already be in the graph. */
+    void add(Commit commit) {
+        if (positions.containsKey(commit.getShaCode())) {
+            return;
+        } else if (missingParent(commit) != null) {
+            reset();
+            rebuild();
+            return;
+        }
+        boolean header = GRAPH_FILE.length() == 0;
+        int pos = insert(commit.getShaCode(), commit.getParentId(),
+                commit.getMergeParentId());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(GRAPH_FILE, true)))) {
+            if (header) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            writeRecord(out, pos);
+        } catch (IOException e) {
+            System.out.println("IOException while saving the commit-graph.");
+        }
+    }
+
+    /** Returns the id of the best common ancestor of the commits ID1 and
+     * ID2, or null if they share no history. Commits are visited from the
+     * highest generation down, so the first one reached from both sides
+     * is a common ancestor that no other common ancestor descends from.
+     * If either commit is missing, the graph is rebuilt from the log. */
+    String mergeBase(String id1, String id2) {
+        if (!positions.containsKey(id1) || !positions.containsKey(id2)) {
+            reset();
+            rebuild();
+        }
+        Integer start1 = positions.get(id1);
+        Integer start2 = positions.get(id2);
+        if (start1 == null || start2 == null) {
+            return null;
+        }
+        if (start1.equals(start2)) {
+            return id1;
+        }
+        byte[] flags = new byte[ids.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(
+            (a, b) -> generations[a] != generations[b]
+                    ? Integer.compare(generations[b], generations[a])
+                    : Integer.compare(b, a));
+        flags[start1] = FROM_1;
+        flags[start2] = FROM_2;
+        queue.add(start1);
+        queue.add(start2);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            if (flags[pos] == (FROM_1 | FROM_2)) {
+                return ids.get(pos);
+            }
+            for (int parent : new int[] {parents1[pos], parents2[pos]}) {
+                if (parent != NONE && (flags[parent] | flags[pos])
+                        != flags[parent]) {
+                    if (flags[parent] == 0) {
+                        queue.add(parent);
+                    }
+                    flags[parent] |= flags[pos];
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Records ID with parents PARENT1 and PARENT2 (either may be null) in
+     * memory and returns its position. */
+    private int insert(String id, String parent1, String parent2) {
+        int pos = ids.size();
+        if (pos == generations.length) {
+            int size = 2 * pos;
+            parents1 = Arrays.copyOf(parents1, size);
+            parents2 = Arrays.copyOf(parents2, size);
+            generations = Arrays.copyOf(generations, size);
+        }
+        ids.add(id);
+        positions.put(id, pos);
+        parents1[pos] = position(parent1);
+        parents2[pos] = position(parent2);
+        int gen = 0;
+        if (parents1[pos] != NONE) {
+            gen = generations[parents1[pos]];
+        }
+        if (parents2[pos] != NONE) {
+            gen = Math.max(gen, generations[parents2[pos]]);
+        }
+        generations[pos] = gen + 1;
+        return pos;
+    }
+
+    /** Returns the position of the commit ID, or NONE if ID is null. */
+    private int position(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        Integer pos = positions.get(id);
+        if (pos == null) {
+            throw new IllegalArgumentException("commit " + id
+                    + " is not in the commit-graph");
+        }
+        return pos;
+    }
+
+    /** Writes the record at position POS to OUT. */
+    private void writeRecord(DataOutputStream out, int pos)
+            throws IOException {
+        out.writeUTF(ids.get(pos));
+        out.writeInt(parents1[pos]);
+        out.writeInt(parents2[pos]);
+        out.writeInt(generations[pos]);
+    }
+
+    /** Reads every complete record of the commit-graph file. A record
+     * that was torn by a crash, or that names parents or a generation
+     * the records before it do not agree with, ends the graph, and it and
+     * anything after it are cut off so later records follow the last good
+     * one. */
+    private void read() {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(GRAPH_FILE.toPath());
+        } catch (IOException e) {
+            System.out.println("IOException while loading the commit-graph.");
+            return;
+        }
+        int end = 0;
+        if (bytes.length >= HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.wrap(bytes);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException("bad commit-graph file");
+            }
+            end = readRecords(bytes);
+        }
+        if (end < bytes.length) {
+            try (FileChannel channel = FileChannel.open(GRAPH_FILE.toPath(),
+                    StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            } catch (IOException e) {
+                System.out.println("IOException while repairing the "
+                        + "commit-graph.");
+            }
+        }
+    }
+
+    /** Reads the records that follow the header in BYTES, the whole
+     * commit-graph file, up to the first that is torn or does not fit,
+     * and returns the offset just past the last one read. */
+    private int readRecords(byte[] bytes) {
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(bytes));
+        int end = HEADER_SIZE;
+        try {
+            in.skipBytes(HEADER_SIZE);
+            while (in.available() > 0) {
+                String id = in.readUTF();
+                int p1 = in.readInt();
+                int p2 = in.readInt();
+                int gen = in.readInt();
+                if (!fits(p1, p2, gen)) {
+                    break;
+                }
+                insert(id, p1 == NONE ? null : ids.get(p1),
+                        p2 == NONE ? null : ids.get(p2));
+                end = bytes.length - in.available();
+            }
+        } catch (IOException e) {
+            return end;
+        }
+        return end;
+    }
+
+    /** Returns true if a record with parent positions P1 and P2 and
+     * generation GEN agrees with the records read so far. */
+    private boolean fits(int p1, int p2, int gen) {
+        int count = ids.size();
+        if (p1 < NONE || p1 >= count || p2 < NONE || p2 >= count) {
+            return false;
+        }
+        int expected = 0;
+        if (p1 != NONE) {
+            expected = generations[p1];
+        }
+        if (p2 != NONE) {
+            expected = Math.max(expected, generations[p2]);
+        }
+        return gen == expected + 1;
+    }
+
+    /** Empties the graph held in memory, before it is rebuilt. */
+    private void reset() {
+        ids.clear();
+        positions.clear();
+    }
+
+    /** Rebuilds the graph from every commit in the log, adding each commit
+     * after its parents, and rewrites the commit-graph file. */
+    private void rebuild() {
+        String[] paths = Commit.logFiles();
+        if (paths == null) {
+            return;
+        }
+        ArrayDeque<Commit> pending = new ArrayDeque<Commit>();
+        for (String path : paths) {
+            pending.push(Commit.load(path));
+            while (!pending.isEmpty()) {
+                Commit commit = pending.peek();
+                String missing = missingParent(commit);
+                if (missing == null) {
+                    pending.pop();
+                    if (!positions.containsKey(commit.getShaCode())) {
+                        insert(commit.getShaCode(), commit.getParentId(),
+                                commit.getMergeParentId());
+                    }
+                } else {
+                    pending.push(Commit.load(missing + ".ser"));
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(GRAPH_FILE)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int pos = 0; pos < ids.size(); pos += 1) {
+                writeRecord(out, pos);
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while saving the commit-graph.");
+        }
+    }
+
+    /** Returns the id of a parent of COMMIT that is not yet in the graph,
+     * or null if there is none. */
+    private String missingParent(Commit commit) {
+        for (String id : new String[] {commit.getParentId(),
+                                       commit.getMergeParentId()}) {
+            if (id != null && !positions.containsKey(id)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /** The commit-graph file. */
+    private static final File GRAPH_FILE = new File("./.gitlet/commit-graph");
+    /** First word of the commit-graph file. */
+    private static final int MAGIC = 0x43475048;
+    /** Version of the record format. */
+    private static final int VERSION = 1;
+    /** Size of the file header. */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    /** Parent position of a commit that has no such parent. */
+    private static final int NONE = -1;
+    /** Flag for commits reachable from the first commit of a query. */
+    private static final byte FROM_1 = 1;
+    /** Flag for commits reachable from the second commit of a query. */
+    private static final byte FROM_2 = 2;
+    /** Initial capacity of the position arrays. */
+    private static final int INITIAL_SIZE = 64;
+
+    /** The graph of the current repository, once loaded. */
+    private static CommitGraph graph;
+
+    /** Commit ids, in file order. */
+    private ArrayList<String> ids;
+    /** Maps a commit id to its position. */
+    private HashMap<String, Integer> positions;
+    /** Position of each commit's first parent, or NONE. */
+    private int[] parents1;
+    /** Position of each commit's merged-in parent, or NONE. */
+    private int[] parents2;
+    /** Generation number of each commit. */
+    private int[] generations;
+}
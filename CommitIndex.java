@@ -0,0 +1,253 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/** Commit-id index for Gitlet, the mini version-control system. Finds
+ *  the commits whose ids start with a given prefix without listing the
+ *  log. .gitlet/commit-index holds every id in sorted order as a fixed-size
+ *  record, after a fan-out table that counts the ids up to each possible
+ *  first byte, so a lookup reads the table and binary-searches the part of
+ *  the file for that byte. Ids of new commits are appended to the small,
+ *  unsorted .gitlet/commit-index-new, which is merged into the sorted file
+ *  once it holds MAX_NEW ids. Its records are framed as RecordFile
+ *  describes; if it is found torn, the index is rebuilt from the log.
+ *  @author Yonas/Juno
+ */
+class CommitIndex {
+
+    /** Records ID, the id of a commit already in the log. */
+    static void add(String id) {
+        if (!INDEX_FILE.exists()) {
+            rebuild();
+            return;
+        }
+        List<String> fresh = readNew();
+        if (fresh == null) {
+            rebuild();
+            return;
+        } else if (fresh.size() + 1 >= MAX_NEW) {
+            fresh.add(id);
+            compact(fresh);
+            return;
+        }
+        try {
+            byte[] record =
+                RecordFile.encode(out -> Codec.writeString(out, id));
+            if (!RecordFile.append(NEW_FILE, NEW_MAGIC, NEW_VERSION,
+                    Collections.singletonList(record))) {
+                rebuild();
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while saving the commit index.");
+        }
+    }
+
+    /** Returns, in sorted order, the ids of the commits that start with
+     * PREFIX, but no more than LIMIT of them. */
+    static List<String> lookup(String prefix, int limit) {
+        if (!INDEX_FILE.exists()) {
+            rebuild();
+        }
+        TreeSet<String> ids = new TreeSet<String>();
+        if (prefix.isEmpty() || !prefix.matches("[0-9a-f]*")
+                || prefix.length() > ID_LENGTH) {
+            return new ArrayList<String>(ids);
+        }
+        List<String> fresh = readNew();
+        if (fresh == null) {
+            rebuild();
+            fresh = new ArrayList<String>();
+        }
+        for (String id : fresh) {
+            if (id.startsWith(prefix)) {
+                ids.add(id);
+            }
+        }
+        try (RandomAccessFile in = new RandomAccessFile(INDEX_FILE, "r")) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("bad commit index");
+            }
+            int first = Integer.parseInt((prefix + "0").substring(0, 2), 16);
+            int last = Integer.parseInt((prefix + "f").substring(0, 2), 16);
+            int lo = first == 0 ? 0 : fanout(in, first - 1);
+            int hi = fanout(in, last);
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (record(in, mid).compareTo(prefix) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int end = fanout(in, last);
+            for (int i = lo; i < end && ids.size() < limit; i += 1) {
+                String id = record(in, i);
+                if (!id.startsWith(prefix)) {
+                    break;
+                }
+                ids.add(id);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        List<String> result = new ArrayList<String>(ids);
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /** Writes the sorted index again from the ids of the commits in the
+     * log. */
+    static void rebuild() {
+        ArrayList<String> ids = new ArrayList<String>();
+        String[] paths = LOG_DIR.list();
+        if (paths != null) {
+            for (String path : paths) {
+                if (path.endsWith(SUFFIX)) {
+                    ids.add(path.substring(0, path.length() - SUFFIX.length()));
+                }
+            }
+        }
+        write(ids);
+        NEW_FILE.delete();
+    }
+
+    /** Merges the ids of FRESH into the sorted index and empties the list
+     * of new ids. */
+    private static void compact(List<String> fresh) {
+        ArrayList<String> ids = new ArrayList<String>(fresh);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(INDEX_FILE)))) {
+            in.readInt();
+            in.readInt();
+            in.skipBytes(FANOUT * Integer.BYTES);
+            byte[] record = new byte[ID_LENGTH];
+            while (true) {
+                in.readFully(record);
+                ids.add(new String(record, StandardCharsets.US_ASCII).trim());
+            }
+        } catch (EOFException e) {
+            write(ids);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        NEW_FILE.delete();
+    }
+
+    /** Replaces the sorted index with one holding IDS. */
+    private static void write(List<String> ids) {
+        String[] sorted = new TreeSet<String>(ids).toArray(new String[0]);
+        int[] counts = new int[FANOUT];
+        for (String id : sorted) {
+            counts[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        File temp = new File(INDEX_FILE.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+                out.writeInt(total);
+            }
+            byte[] record = new byte[ID_LENGTH];
+            for (String id : sorted) {
+                Arrays.fill(record, (byte) ' ');
+                byte[] bytes = id.getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(bytes, 0, record, 0, bytes.length);
+                out.write(record);
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while saving the commit index.");
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), INDEX_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("IOException while saving the commit index.");
+        }
+    }
+
+    /** Returns the ids in the list of new ids, or null if the list was
+     * found torn or in an older format and the index must be rebuilt. */
+    private static List<String> readNew() {
+        ArrayList<String> ids = new ArrayList<String>();
+        if (!NEW_FILE.exists()) {
+            return ids;
+        }
+        try {
+            List<byte[]> records =
+                RecordFile.read(NEW_FILE, NEW_MAGIC, NEW_VERSION);
+            if (records == null) {
+                return null;
+            }
+            for (byte[] record : records) {
+                ids.add(Codec.readString(RecordFile.open(record)));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return ids;
+    }
+
+    /** Returns the number of ids in IN whose first byte is at most B. */
+    private static int fanout(RandomAccessFile in, int b) throws IOException {
+        in.seek(HEADER + (long) b * Integer.BYTES);
+        return in.readInt();
+    }
+
+    /** Returns the I-th id in IN. */
+    private static String record(RandomAccessFile in, int i)
+        throws IOException {
+        byte[] record = new byte[ID_LENGTH];
+        in.seek(HEADER + FANOUT * Integer.BYTES + (long) i * ID_LENGTH);
+        in.readFully(record);
+        return new String(record, StandardCharsets.US_ASCII).trim();
+    }
+
+    /** The sorted index. */
+    private static final File INDEX_FILE =
+        new File("./.gitlet/commit-index");
+    /** The ids added since the sorted index was last written. */
+    private static final File NEW_FILE =
+        new File("./.gitlet/commit-index-new");
+    /** Directory of the commits. */
+    private static final File LOG_DIR = new File("./.gitlet/log");
+    /** Suffix of the files in the log. */
+    private static final String SUFFIX = ".ser";
+    /** Number of new ids that makes them be merged into the sorted index. */
+    private static final int MAX_NEW = 256;
+    /** Length of a full id, and of each record of the sorted index. Ids
+     * of commits from before full ids are shorter, padded with spaces. */
+    private static final int ID_LENGTH = 40;
+    /** Number of entries of the fan-out table, one per first byte. */
+    private static final int FANOUT = 256;
+    /** Size of the words before the fan-out table. */
+    private static final int HEADER = 2 * Integer.BYTES;
+    /** First word of the sorted index. */
+    private static final int MAGIC = 0x47434958;
+    /** First word of the list of new ids. */
+    private static final int NEW_MAGIC = 0x47494e57;
+    /** Version of the sorted index format. */
+    private static final int VERSION = 1;
+    /** Version of the format of the list of new ids. */
+    private static final int NEW_VERSION = 2;
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/** Commit journal for Gitlet, the mini version-control system. Every
+ *  commit made is summarized by one record appended to .gitlet/journal:
+ *  its id, time, message and the ids of its parents. global-log prints
+ *  the journal in one sequential read instead of loading every commit in
+ *  the log. Repositories made before the journal, or whose journal was
+ *  lost or is in an older format, get it rebuilt from the log. Records
+ *  are framed as RecordFile describes, so a torn one is cut off.
+ *  @author Yonas/Juno
+ */
+class CommitJournal {
+
+    /** Appends the record of COMMIT, which must already be in the log. */
+    static void add(Commit commit) {
+        try {
+            if (!JOURNAL_FILE.exists() || !RecordFile.append(JOURNAL_FILE,
+                    MAGIC, VERSION, Collections.singletonList(record(commit)))) {
+                rebuild();
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while saving the journal.");
+        }
+    }
+
+    /** Prints the id, timestamp and message of every commit in the journal
+     * to OUT, in the form log uses. */
+    static void print(PrintWriter out) {
+        try {
+            List<byte[]> records =
+                RecordFile.read(JOURNAL_FILE, MAGIC, VERSION);
+            if (records == null) {
+                rebuild();
+                records = RecordFile.read(JOURNAL_FILE, MAGIC, VERSION);
+            }
+            for (byte[] record : records) {
+                DataInputStream in = RecordFile.open(record);
+                String id = Codec.readString(in);
+                String time = Codec.readString(in);
+                String message = Codec.readString(in);
+                out.println("===");
+                out.println("Commit " + id);
+                out.println(time);
+                out.println(message);
+                out.println();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Writes the journal again from the commits in the log, in the order
+     * they were made. */
+    static void rebuild() {
+        ArrayList<Commit> commits = new ArrayList<Commit>();
+        String[] paths = Commit.logFiles();
+        if (paths != null) {
+            for (String path : paths) {
+                commits.add(Commit.load(path));
+            }
+        }
+        commits.sort(Comparator.comparing(Commit::getTime)
+                .thenComparing(Commit::getShaCode));
+        try {
+            ArrayList<byte[]> records = new ArrayList<byte[]>();
+            for (Commit commit : commits) {
+                records.add(record(commit));
+            }
+            RecordFile.write(JOURNAL_FILE, MAGIC, VERSION, records);
+        } catch (IOException e) {
+            System.out.println("IOException while saving the journal.");
+        }
+    }
+
+    /** Returns the record of COMMIT. Fields are written as Codec writes
+     * strings, so a message of any length fits. */
+    private static byte[] record(Commit commit) throws IOException {
+        return RecordFile.encode(out -> {
+            Codec.writeString(out, commit.getShaCode());
+            Codec.writeString(out, commit.getTime());
+            Codec.writeString(out, commit.getMessage());
+            Codec.writeString(out, commit.getParentId());
+            Codec.writeString(out, commit.getMergeParentId());
+        });
+    }
+
+    /** The journal file. */
+    private static final File JOURNAL_FILE = new File("./.gitlet/journal");
+    /** First word of the journal. */
+    private static final int MAGIC = 0x474a524e;
+    /** Version of the journal format. */
+    private static final int VERSION = 2;
+}
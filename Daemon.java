@@ -0,0 +1,184 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/** Resident server mode for Gitlet, the mini version-control system.
+ *  "gitlet daemon" keeps the repository state loaded and answers commands
+ *  sent over the Unix domain socket .gitlet/daemon.sock, one at a time.
+ *  While that socket exists, every gitlet invocation in the repository
+ *  hands its arguments to the daemon and prints back exactly what the
+ *  command printed, with the same exit status. "gitlet daemon stop" makes
+ *  the daemon flush its state and exit.
+ *  @author Yonas/Juno
+ */
+class Daemon {
+
+    /** Runs the daemon until it is stopped. */
+    static void serve() {
+        if (isRunning()) {
+            System.out.println("A gitlet daemon is already running.");
+            return;
+        }
+        SOCKET.delete();
+        UnixDomainSocketAddress address =
+            UnixDomainSocketAddress.of(SOCKET.toPath());
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            Runtime.getRuntime().addShutdownHook(new Thread(Daemon::flush));
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    answer(client);
+                } catch (IOException e) {
+                    continue;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("IOException while running the daemon.");
+        } finally {
+            flush();
+        }
+    }
+
+    /** Returns true if a daemon is listening on the socket. */
+    static boolean isRunning() {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        try {
+            SocketChannel.open(
+                UnixDomainSocketAddress.of(SOCKET.toPath())).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Sends ARGS to a running daemon, copies what it printed to this
+     * process's output and error streams, and returns its exit status.
+     * Returns -1 if no daemon is running, so the caller should run the
+     * command itself. */
+    static int forward(String[] args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = forward(args, out, err);
+        if (status >= 0) {
+            System.out.write(out.toByteArray(), 0, out.size());
+            System.out.flush();
+            System.err.write(err.toByteArray(), 0, err.size());
+            System.err.flush();
+        }
+        return status;
+    }
+
+    /** Sends ARGS to a running daemon, collects its output in OUT and ERR,
+     * and returns its exit status, or -1 if no daemon is running. */
+    private static int forward(String[] args, ByteArrayOutputStream out,
+                               ByteArrayOutputStream err) {
+        if (!SOCKET.exists()) {
+            return -1;
+        }
+        try (SocketChannel channel = SocketChannel.open(
+                UnixDomainSocketAddress.of(SOCKET.toPath()))) {
+            DataOutputStream request =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            DataInputStream reply =
+                new DataInputStream(Channels.newInputStream(channel));
+            int status = reply.readInt();
+            out.write(reply.readNBytes(reply.readInt()));
+            err.write(reply.readNBytes(reply.readInt()));
+            return status;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** Reads one command from CLIENT, runs it with its output captured and
+     * sends back the exit status and output. */
+    private static void answer(SocketChannel client) throws IOException {
+        DataInputStream request =
+            new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[request.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = request.readUTF();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = 0;
+        synchronized (Daemon.class) {
+            PrintStream stdout = System.out;
+            PrintStream stderr = System.err;
+            System.setOut(new PrintStream(out, true));
+            System.setErr(new PrintStream(err, true));
+            try {
+                if (args.length == 2 && args[0].equals("daemon")
+                        && args[1].equals("stop")) {
+                    running = false;
+                } else {
+                    Main.run(args);
+                }
+            } catch (Exception | Error e) {
+                System.err.print("Exception in thread \"main\" ");
+                e.printStackTrace();
+                status = 1;
+                Main.reloadState();
+            } finally {
+                StatCache.reset();
+                System.out.flush();
+                System.err.flush();
+                System.setOut(stdout);
+                System.setErr(stderr);
+            }
+        }
+        DataOutputStream reply =
+            new DataOutputStream(Channels.newOutputStream(client));
+        reply.writeInt(status);
+        reply.writeInt(out.size());
+        out.writeTo(reply);
+        reply.writeInt(err.size());
+        err.writeTo(reply);
+        reply.flush();
+    }
+
+    /** Saves the repository state and removes the socket. Runs once, when
+     * the daemon stops or the JVM is shut down. */
+    private static void flush() {
+        synchronized (Daemon.class) {
+            if (flushed) {
+                return;
+            }
+            flushed = true;
+            try {
+                Main.serialize();
+                Main.checkpoint();
+                StatCache.save();
+            } catch (IOException e) {
+                System.err.println("IOException while saving the state.");
+            }
+            SOCKET.delete();
+        }
+    }
+
+    /** The socket the daemon listens on. */
+    private static final File SOCKET = new File("./.gitlet/daemon.sock");
+
+    /** False once the daemon has been told to stop. */
+    private static volatile boolean running = true;
+    /** True once the state has been flushed on the way out. */
+    private static boolean flushed;
+}
@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas for Gitlet, the mini version-control system. A delta
+ *  rebuilds a target byte array from a base byte array using two kinds of
+ *  instructions: copy a range of the base, or insert literal bytes.
+ *  @author Yonas/Juno
+ */
+class Delta {
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<Integer, Integer>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int pending = 0;
+        int i = 0;
+        while (i < target.length) {
+            Integer start = null;
+            if (i + BLOCK <= target.length) {
+                start = blocks.get(hash(target, i));
+            }
+            int length = 0;
+            if (start != null) {
+                while (start + length < base.length && i + length < target.length
+                       && base[start + length] == target[i + length]) {
+                    length += 1;
+                }
+            }
+            if (length < BLOCK) {
+                i += 1;
+                continue;
+            }
+            while (i > pending && start > 0
+                   && base[start - 1] == target[i - 1]) {
+                i -= 1;
+                start -= 1;
+                length += 1;
+            }
+            writeInsert(out, target, pending, i);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, length);
+            i += length;
+            pending = i;
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = new int[] {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta does not match its base");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]] & 0xff;
+            pos[0] += 1;
+            if (op == COPY) {
+                int start = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, start, result, size, length);
+                size += length;
+            } else {
+                System.arraycopy(delta, pos[0], result, size, op);
+                pos[0] += op;
+                size += op;
+            }
+        }
+        if (size != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Writes insert instructions for TARGET[FROM .. TO) to OUT. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 1;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Writes the non-negative VALUE to OUT, seven bits per byte. */
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads a value written by writeVarint from DATA at POS[0], advancing
+     * POS[0] past it. */
+    static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /** Size of the blocks of the base that copies are matched against. */
+    private static final int BLOCK = 16;
+    /** Instruction byte for a copy from the base. */
+    private static final int COPY = 0x80;
+    /** Largest number of literal bytes in one insert instruction. */
+    private static final int MAX_INSERT = 0x7f;
+}
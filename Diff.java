@@ -0,0 +1,445 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Line diffs for Gitlet, the mini version-control system. Files are
+ *  split into lines once, and every distinct line gets an int id, so the
+ *  comparison itself only looks at arrays of ints. Differences are found
+ *  with Myers' algorithm in its linear-space form, which takes time about
+ *  (N + M) * D for files of N and M lines that differ in D lines, and are
+ *  printed in unified format.
+ *  @author Yonas/Juno
+ */
+class Diff {
+
+    /** One side of a diff: a set of paths, each with the id of its
+     * contents. The contents are read from the object store, unless the
+     * path was given a file to read them from instead. */
+    static class Side {
+
+        /** Adds PATH, whose contents are the blob SHA. */
+        void put(String path, String sha) {
+            shas.put(path, sha);
+        }
+
+        /** Adds PATH, whose contents, with id SHA, are in FILE. */
+        void put(String path, String sha, File file) {
+            shas.put(path, sha);
+            files.put(path, file);
+        }
+
+        /** Removes PATH. */
+        void remove(String path) {
+            shas.remove(path);
+            files.remove(path);
+        }
+
+        /** Returns the id of the contents of PATH, or null if this side
+         * does not have PATH. */
+        String sha(String path) {
+            return shas.get(path);
+        }
+
+        /** Returns the paths of this side. */
+        Set<String> paths() {
+            return shas.keySet();
+        }
+
+        /** Returns the contents of PATH, or nothing if this side does not
+         * have PATH. */
+        byte[] read(String path) {
+            File file = files.get(path);
+            if (file != null) {
+                return Utils.readContents(file);
+            }
+            String sha = shas.get(path);
+            return sha == null ? new byte[0] : ObjectStore.read(sha);
+        }
+
+        /** The id of the contents of each path. */
+        private HashMap<String, String> shas = new HashMap<String, String>();
+        /** The files holding the contents of the paths that have them. */
+        private HashMap<String, File> files = new HashMap<String, File>();
+    }
+
+    /** Writes to OUT, in unified format and in order of path, the
+     * differences between FROM and TO for each of PATHS. Paths whose ids
+     * are equal on both sides are skipped without reading them. */
+    static void write(Side from, Side to, Set<String> paths,
+                      OutputStream out) throws IOException {
+        for (String path : new TreeSet<String>(paths)) {
+            String a = from.sha(path);
+            String b = to.sha(path);
+            if (a == null ? b != null : !a.equals(b)) {
+                unified(path, a == null ? null : from.read(path),
+                        b == null ? null : to.read(path), out);
+            }
+        }
+    }
+
+    /** Writes to OUT the differences between the contents A and B of PATH,
+     * in unified format. A or B is null if PATH is missing on that side. */
+    static void unified(String path, byte[] a, byte[] b, OutputStream out)
+        throws IOException {
+        print(out, "diff --git a/" + path + " b/" + path + "\n");
+        if (isBinary(a) || isBinary(b)) {
+            print(out, "Binary files " + (a == null ? NO_FILE : "a/" + path)
+                    + " and " + (b == null ? NO_FILE : "b/" + path)
+                    + " differ\n");
+            return;
+        }
+        print(out, "--- " + (a == null ? NO_FILE : "a/" + path) + "\n");
+        print(out, "+++ " + (b == null ? NO_FILE : "b/" + path) + "\n");
+        Lines[] lines = split(a == null ? new byte[0] : a,
+                b == null ? new byte[0] : b);
+        Lines x = lines[0];
+        Lines y = lines[1];
+        List<int[]> hunks = hunks(x.ids, y.ids);
+        for (int i = 0; i < hunks.size(); ) {
+            int j = i;
+            while (j + 1 < hunks.size()
+                   && hunks.get(j + 1)[0] - hunks.get(j)[1] <= 2 * CONTEXT) {
+                j += 1;
+            }
+            int aStart = Math.max(0, hunks.get(i)[0] - CONTEXT);
+            int aEnd = Math.min(x.size(), hunks.get(j)[1] + CONTEXT);
+            int bStart = hunks.get(i)[2] - (hunks.get(i)[0] - aStart);
+            int bEnd = hunks.get(j)[3] + (aEnd - hunks.get(j)[1]);
+            print(out, "@@ -" + range(aStart, aEnd - aStart) + " +"
+                    + range(bStart, bEnd - bStart) + " @@\n");
+            int pos = aStart;
+            for (int k = i; k <= j; k += 1) {
+                int[] hunk = hunks.get(k);
+                printLines(out, ' ', x, pos, hunk[0]);
+                printLines(out, '-', x, hunk[0], hunk[1]);
+                printLines(out, '+', y, hunk[2], hunk[3]);
+                pos = hunk[1];
+            }
+            printLines(out, ' ', x, pos, aEnd);
+            i = j + 1;
+        }
+    }
+
+    /** Returns the range of COUNT lines starting at line START, counted
+     * from 0, as a unified diff header shows it. */
+    private static String range(int start, int count) {
+        if (count == 0) {
+            return start + ",0";
+        } else if (count == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (start + 1) + "," + count;
+    }
+
+    /** Writes lines FROM up to TO of LINES to OUT, each after MARK. */
+    private static void printLines(OutputStream out, char mark, Lines lines,
+                                   int from, int to) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(mark);
+            out.write(lines.data, lines.start(i),
+                    lines.end(i) - lines.start(i));
+            if (lines.data[lines.end(i) - 1] != '\n') {
+                print(out, "\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Returns true if CONTENTS, which may be null, look like binary data
+     * rather than text: if they have a zero byte near the start. */
+    private static boolean isBinary(byte[] contents) {
+        if (contents == null) {
+            return false;
+        }
+        int n = Math.min(contents.length, BINARY_CHECK);
+        for (int i = 0; i < n; i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes S to OUT. */
+    private static void print(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The lines of one file. Line I is the bytes of DATA from start(I) up
+     * to end(I), including its newline if it has one. */
+    static class Lines {
+
+        /** Lines of DATA, ending at ENDS, with ids IDS. */
+        Lines(byte[] data, int[] ends, int[] ids) {
+            this.data = data;
+            this.ends = ends;
+            this.ids = ids;
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return ids.length;
+        }
+
+        /** Returns the offset in DATA of line I. */
+        int start(int i) {
+            return i == 0 ? 0 : ends[i - 1];
+        }
+
+        /** Returns the offset in DATA just past line I. */
+        int end(int i) {
+            return ends[i];
+        }
+
+        /** The contents of the file. */
+        final byte[] data;
+        /** The offset just past each line. */
+        final int[] ends;
+        /** The id of each line; equal lines of files split together have
+         * equal ids. */
+        final int[] ids;
+    }
+
+    /** Returns the lines of each of FILES, with ids that are equal exactly
+     * when the lines are equal, across all of FILES. */
+    static Lines[] split(byte[]... files) {
+        Interner interner = new Interner();
+        Lines[] result = new Lines[files.length];
+        for (int f = 0; f < files.length; f += 1) {
+            byte[] data = files[f];
+            int count = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n' || i == data.length - 1) {
+                    count += 1;
+                }
+            }
+            int[] ends = new int[count];
+            int[] ids = new int[count];
+            int start = 0;
+            for (int n = 0; n < count; n += 1) {
+                int end = start;
+                while (data[end] != '\n' && end < data.length - 1) {
+                    end += 1;
+                }
+                end += 1;
+                ends[n] = end;
+                ids[n] = interner.intern(data, start, end);
+                start = end;
+            }
+            result[f] = new Lines(data, ends, ids);
+        }
+        return result;
+    }
+
+    /** Returns the differences between the line ids A and B, in order. Each
+     * is {aStart, aEnd, bStart, bEnd}: lines aStart up to aEnd of A are
+     * replaced by lines bStart up to bEnd of B. Either range may be empty,
+     * but not both. */
+    static List<int[]> hunks(int[] a, int[] b) {
+        boolean[] deleted = new boolean[a.length];
+        boolean[] inserted = new boolean[b.length];
+        int size = a.length + b.length + 3;
+        compare(a, 0, a.length, b, 0, b.length, deleted, inserted,
+                new int[size], new int[size]);
+        ArrayList<int[]> hunks = new ArrayList<int[]>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length && !deleted[i] && !inserted[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int[] hunk = new int[] {i, i, j, j};
+            while ((i < a.length && deleted[i])
+                   || (j < b.length && inserted[j])) {
+                if (i < a.length && deleted[i]) {
+                    i += 1;
+                }
+                if (j < b.length && inserted[j]) {
+                    j += 1;
+                }
+            }
+            hunk[1] = i;
+            hunk[3] = j;
+            hunks.add(hunk);
+        }
+        return hunks;
+    }
+
+    /** Marks in DELETED and INSERTED the lines of A[ALO .. AHI) and
+     * B[BLO .. BHI) that are not in a longest common subsequence of the
+     * two. VF and VB are work space, at least as long as the two ranges
+     * together plus 3. */
+    private static void compare(int[] a, int aLo, int aHi,
+                                int[] b, int bLo, int bHi,
+                                boolean[] deleted, boolean[] inserted,
+                                int[] vf, int[] vb) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(inserted, bLo, bHi, true);
+        } else if (bLo == bHi) {
+            Arrays.fill(deleted, aLo, aHi, true);
+        } else {
+            long mid = middle(a, aLo, aHi, b, bLo, bHi, vf, vb);
+            int x = (int) (mid >>> 32);
+            int y = (int) mid;
+            compare(a, aLo, x, b, bLo, y, deleted, inserted, vf, vb);
+            compare(a, x, aHi, b, y, bHi, deleted, inserted, vf, vb);
+        }
+    }
+
+    /** Returns a point (x, y), packed as x in the high word and y in the
+     * low word, that lies on a shortest edit path from (ALO, BLO) to
+     * (AHI, BHI), found by searching forward from the start and backward
+     * from the end at once until the searches meet. Neither range is
+     * empty, and they differ in their first and last lines. */
+    private static long middle(int[] a, int aLo, int aHi,
+                               int[] b, int bLo, int bHi,
+                               int[] vf, int[] vb) {
+        int delta = (aHi - aLo) - (bHi - bLo);
+        boolean odd = (delta & 1) != 0;
+        int max = (aHi - aLo + bHi - bLo + 1) / 2;
+        int off = max + 1;
+        vf[off + 1] = aLo;
+        vb[off + 1] = bHi;
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = d; k >= -d; k -= 2) {
+                int x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = bLo + (x - aLo) - k;
+                while (x < aHi && y < bHi && a[x] == b[y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int c = k - delta;
+                if (odd && c >= -(d - 1) && c <= d - 1 && y >= vb[off + c]) {
+                    return ((long) x << 32) | y;
+                }
+            }
+            for (int c = d; c >= -d; c -= 2) {
+                int y;
+                if (c == -d || (c != d && vb[off + c - 1] > vb[off + c + 1])) {
+                    y = vb[off + c + 1];
+                } else {
+                    y = vb[off + c - 1] - 1;
+                }
+                int k = c + delta;
+                int x = aLo + (y - bLo) + k;
+                while (x > aLo && y > bLo && a[x - 1] == b[y - 1]) {
+                    x -= 1;
+                    y -= 1;
+                }
+                vb[off + c] = y;
+                if (!odd && k >= -d && k <= d && x <= vf[off + k]) {
+                    return ((long) x << 32) | y;
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Gives each distinct line an int id, using an open-addressing hash
+     * table of ints rather than a map of boxed keys. */
+    private static class Interner {
+
+        /** Returns the id of the line DATA[START .. END), giving it a new
+         * id if it has not been seen. */
+        int intern(byte[] data, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i += 1) {
+                hash = 31 * hash + data[i];
+            }
+            int mask = table.length - 1;
+            int slot = mix(hash) & mask;
+            while (table[slot] != 0) {
+                int id = table[slot] - 1;
+                if (hashes[id] == hash
+                        && Arrays.equals(sources[id], starts[id], ends[id],
+                                         data, start, end)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, 2 * count);
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+                sources = Arrays.copyOf(sources, 2 * count);
+            }
+            hashes[count] = hash;
+            starts[count] = start;
+            ends[count] = end;
+            sources[count] = data;
+            table[slot] = count + 1;
+            count += 1;
+            if (2 * count > table.length) {
+                rehash();
+            }
+            return count - 1;
+        }
+
+        /** Doubles the size of the table. */
+        private void rehash() {
+            table = new int[2 * table.length];
+            int mask = table.length - 1;
+            for (int id = 0; id < count; id += 1) {
+                int slot = mix(hashes[id]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id + 1;
+            }
+        }
+
+        /** Returns HASH with its bits spread, so that lines differing only
+         * near their ends do not crowd into neighboring slots. */
+        private static int mix(int hash) {
+            hash *= 0x9e3779b9;
+            return hash ^ (hash >>> 16);
+        }
+
+        /** Slots holding an id plus one, or 0 when empty. */
+        private int[] table = new int[INITIAL_SIZE];
+        /** Number of ids given out. */
+        private int count;
+        /** The hash of the line of each id. */
+        private int[] hashes = new int[INITIAL_SIZE];
+        /** The file holding the line of each id. */
+        private byte[][] sources = new byte[INITIAL_SIZE][];
+        /** Where the line of each id starts in its file. */
+        private int[] starts = new int[INITIAL_SIZE];
+        /** Where the line of each id ends in its file. */
+        private int[] ends = new int[INITIAL_SIZE];
+    }
+
+    /** Initial size of the interner's arrays. */
+    private static final int INITIAL_SIZE = 64;
+    /** Number of unchanged lines shown around each change. */
+    private static final int CONTEXT = 3;
+    /** Number of leading bytes searched for a zero byte to tell binary
+     * files. */
+    private static final int BINARY_CHECK = 8000;
+    /** Name shown for the missing side of an added or removed file. */
+    private static final String NO_FILE = "/dev/null";
+}
@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Directory trees for Gitlet, the mini version-control system. A tree
+ *  lists one directory: each entry is either a file, with the id of its
+ *  blob, or a subdirectory, with the id of another tree. Trees are kept in
+ *  the object store under the SHA-1 of their contents, so a directory that
+ *  is the same in two commits is a single object shared by both, and
+ *  updating or comparing trees only visits the directories on changed
+ *  paths. Paths are relative to the working directory, with / between
+ *  names.
+ *  @author Yonas/Juno
+ */
+class FileTree {
+
+    /** Returns the id of the tree holding FILES, which maps each path to
+     * the id of its blob. */
+    static String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Returns the id of the tree ID with CHANGES applied. CHANGES maps
+     * paths to the ids of their new blobs, or to null for paths that are
+     * removed. ID may be null for the empty tree. Only the directories on
+     * changed paths are read and written again; directories left empty are
+     * dropped. */
+    static String update(String id, Map<String, String> changes) {
+        TreeMap<String, Entry> entries = new TreeMap<String, Entry>(read(id));
+        TreeMap<String, TreeMap<String, String>> below =
+            new TreeMap<String, TreeMap<String, String>>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<String, String>())
+                    .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() != null) {
+                entries.put(path, new Entry(false, change.getValue()));
+            } else if (entries.containsKey(path)
+                    && !entries.get(path).isTree) {
+                entries.remove(path);
+            }
+        }
+        for (String name : below.keySet()) {
+            Entry old = entries.get(name);
+            String sub = update(old != null && old.isTree ? old.id : null,
+                    below.get(name));
+            if (!sub.equals(EMPTY_ID)) {
+                entries.put(name, new Entry(true, sub));
+            } else if (old != null && old.isTree) {
+                entries.remove(name);
+            }
+        }
+        return store(entries);
+    }
+
+    /** Returns every file below the tree ID, mapped from its path to the id
+     * of its blob. */
+    static HashMap<String, String> flatten(String id) {
+        HashMap<String, String> files = new HashMap<String, String>();
+        flatten(id, "", files);
+        return files;
+    }
+
+    /** Adds every file below the tree ID to FILES, with PREFIX in front of
+     * its path. */
+    private static void flatten(String id, String prefix,
+                                HashMap<String, String> files) {
+        for (Map.Entry<String, Entry> entry : read(id).entrySet()) {
+            Entry e = entry.getValue();
+            if (e.isTree) {
+                flatten(e.id, prefix + entry.getKey() + "/", files);
+            } else {
+                files.put(prefix + entry.getKey(), e.id);
+            }
+        }
+    }
+
+    /** Adds the tree ID, and every subtree and blob below it, to IDS.
+     * Subtrees already in IDS are not read again. */
+    static void reach(String id, Set<String> ids) {
+        if (!ids.add(id)) {
+            return;
+        }
+        for (Entry e : read(id).values()) {
+            if (e.isTree) {
+                reach(e.id, ids);
+            } else {
+                ids.add(e.id);
+            }
+        }
+    }
+
+    /** Returns the files that differ between the trees FROM and TO, each
+     * mapped to its blob id in FROM and in TO, either of which is null if
+     * the file is not in that tree. Subtrees with the same id in both are
+     * skipped without being read. */
+    static TreeMap<String, String[]> diff(String from, String to) {
+        TreeMap<String, String[]> changes = new TreeMap<String, String[]>();
+        diff(from, to, "", changes);
+        return changes;
+    }
+
+    /** Adds the differences between the trees FROM and TO to CHANGES, with
+     * PREFIX in front of each path. */
+    private static void diff(String from, String to, String prefix,
+                             TreeMap<String, String[]> changes) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        TreeMap<String, Entry> fromEntries = read(from);
+        TreeMap<String, Entry> toEntries = read(to);
+        TreeSet<String> names = new TreeSet<String>(fromEntries.keySet());
+        names.addAll(toEntries.keySet());
+        for (String name : names) {
+            Entry a = fromEntries.get(name);
+            Entry b = toEntries.get(name);
+            String treeA = a != null && a.isTree ? a.id : null;
+            String treeB = b != null && b.isTree ? b.id : null;
+            if (treeA != null || treeB != null) {
+                diff(treeA, treeB, prefix + name + "/", changes);
+            }
+            String blobA = a != null && !a.isTree ? a.id : null;
+            String blobB = b != null && !b.isTree ? b.id : null;
+            if ((blobA != null || blobB != null)
+                    && (blobA == null || !blobA.equals(blobB))) {
+                changes.put(prefix + name, new String[] {blobA, blobB});
+            }
+        }
+    }
+
+    /** Returns the entries of the tree ID, or no entries if ID is null.
+     * Trees are parsed once and kept while they are in use, since they
+     * never change. */
+    private static TreeMap<String, Entry> read(String id) {
+        if (id == null) {
+            return new TreeMap<String, Entry>();
+        }
+        TreeMap<String, Entry> entries = cache.get(id);
+        if (entries != null) {
+            return entries;
+        }
+        entries = new TreeMap<String, Entry>();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(ObjectStore.read(id)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("bad tree " + id);
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                boolean isTree = in.readBoolean();
+                String name = in.readUTF();
+                entries.put(name, new Entry(isTree, in.readUTF()));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        cache.put(id, entries);
+        return entries;
+    }
+
+    /** Stores a tree with ENTRIES, unless the store already has it, and
+     * returns its id. */
+    private static String store(TreeMap<String, Entry> entries) {
+        byte[] contents = encode(entries);
+        String id = ObjectStore.write(contents);
+        cache.putIfAbsent(id, entries);
+        return id;
+    }
+
+    /** Returns the stored form of a tree with ENTRIES. */
+    private static byte[] encode(TreeMap<String, Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeBoolean(entry.getValue().isTree);
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().id);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** One name in a directory. */
+    private static class Entry {
+
+        /** An entry for a subdirectory if ISTREE, else for a file, whose
+         * tree or blob is ID. */
+        Entry(boolean isTree, String id) {
+            this.isTree = isTree;
+            this.id = id;
+        }
+
+        /** True for a subdirectory. */
+        private final boolean isTree;
+        /** Id of the tree or blob. */
+        private final String id;
+    }
+
+    /** First word of a tree. */
+    private static final int MAGIC = 0x47545245;
+    /** Version of the tree format. */
+    private static final int VERSION = 1;
+    /** Id of the tree with no entries. */
+    static final String EMPTY_ID =
+        Utils.sha1((Object) encode(new TreeMap<String, Entry>()));
+
+    /** Most trees kept parsed in the cache. */
+    private static final int MAX_CACHED = 4096;
+
+    /** Trees read or written lately, by id. Once it holds MAX_CACHED
+     * trees, the least recently used is dropped, so that a long-lived
+     * daemon does not keep every tree it has seen. */
+    private static final Map<String, TreeMap<String, Entry>> cache =
+        Collections.synchronizedMap(
+            new LinkedHashMap<String, TreeMap<String, Entry>>(16, 0.75f,
+                                                              true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<String, TreeMap<String, FileTree.Entry>> e) {
+                    return size() > MAX_CACHED;
+                }
+            });
+}
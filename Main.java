@@ -1,15 +1,34 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.FileOutputStream;
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 
 /** Driver class for Gitlet, the mini version-control system.
  *  @author Yonas/Juno
@@ -20,9 +39,25 @@ public class Main {
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException,
             ClassNotFoundException {
+        if (args.length != 1 || !args[0].equals("daemon")) {
+            int status = Daemon.forward(args);
+            if (status > 0) {
+                System.exit(status);
+            } else if (status == 0) {
+                return;
+            }
+        }
+        run(args);
+    }
+
+    /** Runs the command in ARGS against the repository and saves the
+     * result. The daemon calls this once per command it receives. */
+    static void run(String... args) throws IOException,
+            ClassNotFoundException {
         _args = args;
         statement();
         serialize();
+        StatCache.save();
     }
 
     static void statement() throws IOException, ClassNotFoundException {
@@ -48,7 +83,7 @@ public class Main {
             break;
         case "log":
             deserialize();
-            logStatement(head);
+            logStatement();
             break;
         case "global-log":
             deserialize();
@@ -82,6 +117,22 @@ public class Main {
             deserialize();
             mergeStatement();
             break;
+        case "diff":
+            deserialize();
+            diffStatement();
+            break;
+        case "repack":
+            deserialize();
+            ObjectStore.repack();
+            break;
+        case "gc":
+            deserialize();
+            gcStatement();
+            break;
+        case "daemon":
+            deserialize();
+            daemonStatement();
+            break;
         default:
             System.out.println("No command with that name exists.");
         }
@@ -100,15 +151,18 @@ public class Main {
         } else {
             dotgitlet.mkdir();
             new File("./.gitlet/log").mkdir();
-            new File("./.gitlet/stage").mkdir();
             new File("./.gitlet/CommitFiles").mkdir();
             new File("./.gitlet/Objects").mkdir();
-            new File("./.gitlet/RemovedFiles").mkdir();
             Commit init = new Commit("initial commit");
-            init.save();
+            storeCommit(init);
             head = init;
             branch = "master";
             tree = new Tree(branch, init);
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.out.println("IOException while saving the state.");
+            }
         }
     }
 
@@ -116,34 +170,91 @@ public class Main {
      * For this reason, adding a file is also called staging the file. The
      * staging area should be somewhere in .gitlet. If the current working
      * version of the file is identical to the version in the repository,
-     * do nothing .*/
+     * do nothing. Each operand may be a file path such as dir/a.txt, a
+     * directory for every file below it, a glob such as *.txt, or "." for
+     * every file in the working directory; if any operand names nothing
+     * that exists, nothing is staged. The working directory is listed
+     * once, and the files are hashed and stored in one batch; a staged
+     * file is written once, into the object store, and the stage only
+     * records its id. */
     public static void addStatement() {
-        String fileName = _args[1];
-        HashMap<String, String> headFiles = head.getBlobsMap();
-        String[] workingFiles = new File("./").list();
-        String[] removedPaths = new File("./.gitlet/RemovedFiles").list();
-        if (!Arrays.asList(workingFiles).contains(fileName)) {
-            System.out.println("File does not exist.");
+        if (_args.length < 2) {
+            System.out.println("Incorrect operands.");
             return;
         }
-        if (Arrays.asList(removedPaths).contains(fileName)) {
-            File c = new File("./.gitlet/RemovedFiles/" + fileName);
-            c.delete();
-        }
-        File currFile = new File("./" + fileName);
-        byte[] currentContent = Utils.readContents(currFile);
-        String currShaCode = Utils.sha1(currentContent);
-        if (!headFiles.containsKey(fileName)) {
-            File newStaged = new File("./.gitlet/stage/" + fileName);
-            Utils.writeContents(newStaged, currentContent);
-        } else if (currShaCode.equals(headFiles.get(fileName))) {
-            return;
-        } else {
-            File newStaged = new File("./.gitlet/stage/" + fileName);
-            Utils.writeContents(newStaged, currentContent);
+        HashMap<String, String> headFiles = head.getBlobsMap();
+        HashSet<String> workingFiles =
+            new HashSet<String>(Arrays.asList(filesIn(WORKING_DIR)));
+        StageIndex stage = StageIndex.get();
+        LinkedHashSet<String> fileNames = new LinkedHashSet<String>();
+        for (int i = 1; i < _args.length; i += 1) {
+            String operand = _args[i];
+            if (operand.equals(".") || isGlob(operand)) {
+                PathMatcher matcher = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + operand);
+                for (String file : workingFiles) {
+                    if ((operand.equals(".")
+                            || matcher.matches(Paths.get(file)))
+                            && isAddable(file)) {
+                        fileNames.add(file);
+                    }
+                }
+            } else if (workingFiles.contains(operand)) {
+                fileNames.add(operand);
+            } else if (new File("./" + operand).isDirectory()) {
+                for (String file : workingFiles) {
+                    if (file.startsWith(operand + "/")) {
+                        fileNames.add(file);
+                    }
+                }
+            } else {
+                System.out.println("File does not exist.");
+                return;
+            }
+        }
+        ArrayList<File> files = new ArrayList<File>();
+        for (String fileName : fileNames) {
+            if (stage.isRemoved(fileName)) {
+                stage.unstage(fileName);
+            }
+            files.add(new File("./" + fileName));
+        }
+        HashMap<File, String> shas = StatCache.get().sha1(files);
+        ArrayList<String> changed = new ArrayList<String>();
+        for (String fileName : fileNames) {
+            File file = new File("./" + fileName);
+            if (!shas.get(file).equals(headFiles.get(fileName))) {
+                changed.add(fileName);
+            }
+        }
+        String[] ids = new String[changed.size()];
+        ScanEngine.forEach(ids.length, i -> {
+            File file = new File("./" + changed.get(i));
+            String sha = shas.get(file);
+            ids[i] = ObjectStore.contains(sha) ? sha
+                : ObjectStore.writeFile(file);
+        });
+        for (int i = 0; i < ids.length; i += 1) {
+            stage.add(changed.get(i), ids[i]);
         }
     }
 
+    /** Returns true if OPERAND of add is a glob rather than a file name. */
+    private static boolean isGlob(String operand) {
+        for (char c : "*?[{".toCharArray()) {
+            if (operand.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true if the working file FILE is picked up by "add ." or a
+     * glob, which skip directories and the files status ignores. */
+    private static boolean isAddable(String file) {
+        return new File("./" + file).isFile() && !file.equals(".gitignore")
+            && !file.equals("Makefile");
+    }
 
     /** Saves a snapshot of certain files in the current commit and staging
      * area, creating a new commit. The commit is said to be tracking the saved
@@ -155,39 +266,36 @@ public class Main {
             System.out.println("Please enter a commit message.");
             return;
         }
-        String msg = _args[1];
-        String[] stagedPaths = new File("./.gitlet/stage").list();
-        String[] removedPaths = new File("./.gitlet/RemovedFiles").list();
-        if (stagedPaths.length == 0 && removedPaths.length == 0) {
+        makeCommit(_args[1], null);
+    }
+
+    /** Makes a commit with message MSG out of the staged changes.
+     * MERGEPARENT is the head of the branch being merged in, or null for
+     * an ordinary commit. */
+    static void makeCommit(String msg, Commit mergeParent) {
+        StageIndex stage = StageIndex.get();
+        if (stage.isEmpty()) {
             System.out.println("No changes added to the commit.");
             return;
         }
-        HashMap<String, String> blobs;
-        blobs = new HashMap<String, String>(head.getBlobsMap());
-        for (String r: removedPaths) {
-            if (blobs.containsKey(r)
-                    && (Arrays.asList(removedPaths).contains(r))) {
-                blobs.remove(r);
-            }
-            File c = new File("./.gitlet/RemovedFiles/" + r);
-            c.delete();
-        }
-        for (String f: stagedPaths) {
-            File file = new File(f);
-            blobs.put(file.getName(), Utils.sha1(Utils.readContents(file)));
-            File addtoCommitFiles;
-            addtoCommitFiles = new File("./.gitlet/CommitFiles/"
-                    + Utils.sha1(Utils.readContents(file)));
-            Utils.writeContents(addtoCommitFiles, Utils.readContents(file));
-            File d = new File("./.gitlet/stage/" + f);
-            d.delete();
-        }
-        Commit newCommit = new Commit(blobs, head, msg, branch);
-        newCommit.save();
+        String treeId = FileTree.update(head.getTreeId(), stage.changes());
+        stage.clear();
+        Commit newCommit = new Commit(treeId, head, mergeParent, msg, branch);
+        storeCommit(newCommit);
         head = newCommit;
         tree.makeBranch(branch, newCommit);
     }
 
+    /** Saves COMMIT to the log and records it in the commit-graph, the id
+     * index, the message index and the journal. */
+    static void storeCommit(Commit commit) {
+        commit.save();
+        CommitGraph.get().add(commit);
+        CommitIndex.add(commit.getShaCode());
+        MessageIndex.add(commit);
+        CommitJournal.add(commit);
+    }
+
     /** Untracks a file - Indicates that a file is not to be included in the
      * next commit, even if it is tracked in the current commit. Removes the
      * file from the working directory if it was tracked in the current commit.
@@ -197,80 +305,149 @@ public class Main {
     public static void rmStatement() {
         String fileName = _args[1];
         File newFile = new File("./" + fileName);
-        String[] stagedPaths = new File("./.gitlet/stage").list();
-        String[] workingPaths = new File("./").list();
+        StageIndex stage = StageIndex.get();
         HashMap<String, String> headFiles = head.getBlobsMap();
         if (!newFile.exists()) {
-            File removedFile = new File("./.gitlet/RemovedFiles/" + fileName);
-            try {
-                removedFile.createNewFile();
-            } catch (IOException e) {
-
-            }
+            stage.remove(fileName);
             return;
-        } else if (!Arrays.asList(stagedPaths).contains(fileName)
+        } else if (stage.sha(fileName) == null
                     && !headFiles.containsKey(fileName)) {
             System.out.println("No reason to remove the file.");
             return;
         }
-        if (Arrays.asList(stagedPaths).contains(fileName)) {
-            File d = new File("./.gitlet/stage/" + fileName);
-            d.delete();
-        } 
+        stage.unstage(fileName);
         if (headFiles.containsKey(fileName)) {
-            byte[] newContent = Utils.readContents(newFile);
-            File removedFile = new File("./.gitlet/RemovedFiles/" + fileName);
-            Utils.writeContents(removedFile, newContent);
-            File w = new File("./" + fileName);
-            w.delete();
+            stage.remove(fileName);
+            deleteFile(WORKING_DIR, fileName);
         }
     }
 
     /** display information about each commit backwards along the commit tree
-     * until the initial commit. Shows commit id, timestamp, and message COMMIT.
-     * */
-    public static void logStatement(Commit commit) {
-        if (commit.getParent() != null) {
-            System.out.println("===");
-            System.out.println("Commit " + commit.getShaCode());
-            System.out.println(commit.getTime());
-            System.out.println(commit.getMessage() + "\n");
-            logStatement(commit.getParent());
-        } else {
-            System.out.println("===");
-            System.out.println("Commit " + commit.getShaCode());
-            System.out.println(commit.getTime());
-            System.out.println(commit.getMessage() + "\n");
+     * until the initial commit. Shows commit id, timestamp, and message.
+     * "-n COUNT" stops after COUNT commits, and "--since TIME" stops at the
+     * first commit made before TIME (written like the printed timestamps,
+     * e.g. 2017-01-31 or "2017-01-31 18:00:00"); a COUNT or TIME that is
+     * not of that form is rejected. Commits are loaded one at a time as
+     * they are printed, so only the printed ones are read. */
+    public static void logStatement() {
+        int limit = -1;
+        String since = null;
+        for (int i = 1; i < _args.length; i += 1) {
+            boolean valid;
+            if (_args[i].equals("-n") && i + 1 < _args.length) {
+                limit = logCount(_args[i + 1]);
+                valid = limit >= 0;
+                i += 1;
+            } else if (_args[i].equals("--since") && i + 1 < _args.length) {
+                since = logTime(_args[i + 1]);
+                valid = since != null;
+                i += 1;
+            } else if (_args[i].startsWith("--since=")) {
+                since = logTime(_args[i].substring("--since=".length()));
+                valid = since != null;
+            } else {
+                valid = false;
+            }
+            if (!valid) {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        Commit commit = head;
+        int count = 0;
+        while (limit != 0) {
+            if (since != null && commit.getTime().compareTo(since) < 0) {
+                break;
+            }
+            printCommit(out, commit);
+            count += 1;
+            if (count == limit || commit.getParentId() == null) {
+                break;
+            }
+            commit = Commit.load(commit.getParentId() + ".ser");
+        }
+        out.flush();
+    }
+
+    /** Returns COUNT, the value of log's -n, or -1 if it is not a whole
+     * number that fits in an int. */
+    private static int logCount(String count) {
+        if (!count.matches("\\d+")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Returns TIME, the value of log's --since, as a date yyyy-MM-dd or a
+     * time yyyy-MM-dd HH:mm:ss, in the form of the printed timestamps,
+     * or null if it is neither or names no real date. */
+    private static String logTime(String time) {
+        try {
+            if (time.length() == DATE_LENGTH) {
+                return LocalDate.parse(time, DATE_FORMAT).atStartOfDay()
+                        .format(TIME_FORMAT);
+            }
+            return LocalDateTime.parse(time, TIME_FORMAT).format(TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
         }
     }
 
-    /** Displays all commits ever made; order does not matter.*/
+    /** Prints the id, timestamp and message of COMMIT to OUT, followed by a
+     * blank line. */
+    static void printCommit(PrintWriter out, Commit commit) {
+        out.println("===");
+        out.println("Commit " + commit.getShaCode());
+        out.println(commit.getTime());
+        out.println(commit.getMessage());
+        out.println();
+    }
+
+    /** Displays all commits ever made; order does not matter. They are
+     * read from the commit journal, in the order they were made.
+     * "--repair" writes the journal again from the log instead. */
     public static void globalLogStatement() {
-        String[] paths = new File("./.gitlet/log").list();
-        for (String com: paths) {
-            Commit commit = Commit.load(com);
-            System.out.println("===");
-            System.out.println("Commit " + commit.getShaCode());
-            System.out.println(commit.getTime());
-            System.out.println(commit.getMessage() + "\n");
+        if (_args.length == 2 && _args[1].equals("--repair")) {
+            CommitJournal.rebuild();
+            return;
+        } else if (_args.length != 1) {
+            System.out.println("Incorrect operands.");
+            return;
         }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        CommitJournal.print(out);
+        out.flush();
     }
 
     /** Prints out the ids of all commits that have the given commit message,
      * one per line. If there are multiple such commits, it prints the ids
-     * out on separate lines. */
+     * out on separate lines. "-w WORDS" finds the commits whose message
+     * has all of WORDS, and "-s TEXT" those whose message contains TEXT,
+     * both ignoring case. The answers come from the message index, so only
+     * the matching commits are looked at. */
     public static void findStatement() {
-        String message = _args[1];
-        int count = 0;
-        String[] paths = new File("./.gitlet/log").list();
-        for (String name: paths) {
-            Commit commit = Commit.load(name);
-            if (message.equals(commit.getMessage())) {
-                System.out.println(commit.getShaCode());
-                count += 1;
-            }
+        List<String> ids;
+        if (_args.length == 2) {
+            ids = MessageIndex.exact(_args[1]);
+        } else if (_args.length == 3 && _args[1].equals("-w")) {
+            ids = MessageIndex.words(_args[2]);
+        } else if (_args.length == 3 && _args[1].equals("-s")) {
+            ids = MessageIndex.substring(_args[2]);
+        } else {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        for (String id : ids) {
+            System.out.println(id);
         }
-        if (count == 0) {
+        if (ids.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -291,7 +468,8 @@ public class Main {
         }
         System.out.println();
 
-        String[] stagedFiles = new File("./.gitlet/stage").list();
+        StageIndex stage = StageIndex.get();
+        String[] stagedFiles = stage.staged().toArray(new String[0]);
         System.out.println("=== Staged Files ===");
         for (String file: stagedFiles) {
             System.out.println(file);
@@ -303,39 +481,43 @@ public class Main {
         String[] strObjects;
         strObjects = Arrays.copyOf(objects, objects.length, String[].class);
         String[] committedFiles = strObjects;
-        String[] workingFiles = new File("./").list();
-        String[] removedFiles = new File("./.gitlet/RemovedFiles").list();
+        String[] workingFiles = filesIn(WORKING_DIR);
+        String[] removedFiles = stage.removed().toArray(new String[0]);
         System.out.println("=== Removed Files ===");
         for (String file: removedFiles) {
             System.out.println(file);
         }
         System.out.println();
 
-        String[] removeddFiles = new File("./.gitlet/RemovedFiles").list();
+        HashSet<String> working =
+            new HashSet<String>(Arrays.asList(workingFiles));
+        HashSet<String> staged = new HashSet<String>(stage.staged());
+        HashSet<String> removed = new HashSet<String>(stage.removed());
+        HashMap<File, String> shas =
+            hashCandidates(committedFiles, staged, working);
         System.out.println("=== Modifications Not Staged For Commit ===");
         for (String file: committedFiles) {
-            if (Arrays.asList(workingFiles).contains(file)
-                    && !Arrays.asList(stagedFiles).contains(file)) {
+            if (working.contains(file)
+                    && !staged.contains(file)) {
                 File workFile = new File("./" + file);
-                String sha = Utils.sha1(Utils.readContents(workFile));
+                String sha = shas.get(workFile);
                 if (!sha.equals(headFiles.get(file))) {
                     System.out.println(file + " (modified)");
                 }
             }
-            if (!Arrays.asList(workingFiles).contains(file)
-                    && !Arrays.asList(removeddFiles).contains(file)) {
+            if (!working.contains(file)
+                    && !removed.contains(file)) {
                 System.out.println(file + " (deleted)" + branch);
             }
         }
         for (String file: stagedFiles) {
-            if (!Arrays.asList(workingFiles).contains(file)
-                    && !Arrays.asList(removeddFiles).contains(file)) {
+            if (!working.contains(file)
+                    && !removed.contains(file)) {
                 System.out.println(file + " (deleted)");
-            } else if (Arrays.asList(workingFiles).contains(file)) {
+            } else if (working.contains(file)) {
                 File workFile = new File("./" + file);
-                File stageFile = new File("./.gitlet/stage/" + file);
-                String sha = Utils.sha1(Utils.readContents(workFile));
-                String stagesha = Utils.sha1(Utils.readContents(stageFile));
+                String sha = shas.get(workFile);
+                String stagesha = stage.sha(file);
                 if (!sha.equals(stagesha)) {
                     System.out.println(file + " (modified)");
                 } 
@@ -347,7 +529,7 @@ public class Main {
         for (String file: workingFiles) {
             File inWork = new File("./" + file);
             if (!(headFiles.containsKey(file))
-                    && !(Arrays.asList(stagedFiles).contains(file))
+                    && !(staged.contains(file))
                     && !inWork.isDirectory() && !file.equals(".gitignore")
                     && !file.equals("Makefile")) {
                 System.out.println(file);
@@ -388,28 +570,39 @@ public class Main {
             System.out.println("File does not exist in that commit.");
         } else {
             String headFileID = head.getBlobsMap().get(fileName);
-            File headFile = new File("./.gitlet/CommitFiles/" + headFileID);
-            byte[] headFileContents = Utils.readContents(headFile);
             File currFile = new File("./" + fileName);
-            Utils.writeContents(currFile, headFileContents);
+            ObjectStore.copyTo(headFileID, currFile);
         }
     }
 
-    /** Checkout given COMMITID and FILENAME. */
+    /** Checkout given COMMITID, which may be any unique prefix of the id,
+     * and FILENAME. */
     public static void checkoutCommit(String commitID, String fileName) {
-        String[] commits = new File("./.gitlet/log/").list();
-        Commit commit = Commit.load(commitID + ".ser");
-        if (!(Arrays.asList(commits).contains(commitID + ".ser"))) {
-            System.out.println("No commit with that id exists.");
+        Commit commit = findCommit(commitID);
+        if (commit == null) {
+            return;
         } else if (!commit.getBlobsMap().containsKey(fileName)) {
             System.out.println("File does not exist in that commit.");
         } else {
             String file = commit.getBlobsMap().get(fileName);
-            File commitFile = new File("./.gitlet/CommitFiles/" + file);
-            byte[] commitFileContents = Utils.readContents(commitFile);
             File currFile = new File("./" + fileName);
-            Utils.writeContents(currFile, commitFileContents);
+            ObjectStore.copyTo(file, currFile);
+        }
+    }
+
+    /** Returns the commit whose id starts with PREFIX. Prints why and
+     * returns null if there is no such commit or more than one. */
+    static Commit findCommit(String prefix) {
+        List<String> ids = CommitIndex.lookup(prefix, MAX_CANDIDATES);
+        if (ids.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        } else if (ids.size() > 1) {
+            System.out.println("Commit id " + prefix + " is ambiguous; it "
+                    + "could be " + String.join(", ", ids) + ".");
+            return null;
         }
+        return Commit.load(ids.get(0) + ".ser");
     }
 
     /** Checkout given BRANCHNAME. */
@@ -420,63 +613,252 @@ public class Main {
         } else if (branchName == branch) {
             System.out.println("No need to checkout the current branch.");
         } else {
-            HashMap<String, String> headFiles = head.getBlobsMap();
-            String[] workingFiles = new File("./").list();
-            String[] stagedFiles = new File("./.gitlet/stage").list();
             String branchHeadID = tree.getBranches().get(branchName);
             Commit branchHead = Commit.load(branchHeadID + ".ser");
-            for (String file: workingFiles) {
-                if (!headFiles.containsKey(file)
-                        && !Arrays.asList(stagedFiles).contains(file)
-                        && branchHead.getBlobsMap().containsKey(file)) {
-                    System.out.println("There is an untracked file in "
-                            + "the way; delete it or add it first.");
-                    return;
-                }
+            if (!switchFiles(branchHead)) {
+                return;
+            }
+            StageIndex.get().clear();
+            head = branchHead;
+            branch = branchName;
+        }
+    }
+
+    /** Helper for checkout and reset that moves the working directory from
+     * the head commit to TARGET. The files that differ come from comparing
+     * the two commits' trees, which skips every directory they share. Only
+     * those files, and tracked files missing from the working directory,
+     * are written, and only files tracked by the head but not by TARGET are
+     * deleted; everything else is left alone. The CheckoutWriter makes
+     * those changes all or nothing. Refuses, returning false, if a file
+     * that is neither tracked nor staged would be overwritten, and
+     * returns false as well if the files could not be written. */
+    static boolean switchFiles(Commit target) {
+        HashMap<String, String> targetFiles = target.getBlobsMap();
+        TreeMap<String, String[]> changes =
+            FileTree.diff(head.getTreeId(), target.getTreeId());
+        StageIndex stage = StageIndex.get();
+        ArrayList<String> toWrite = new ArrayList<String>();
+        ArrayList<String> toDelete = new ArrayList<String>();
+        for (String file : changes.keySet()) {
+            String[] shas = changes.get(file);
+            if (shas[1] == null) {
+                toDelete.add(file);
+            } else if (shas[0] == null && new File("./" + file).isFile()
+                    && stage.sha(file) == null) {
+                System.out.println("There is an untracked file in "
+                        + "the way; delete it or add it first.");
+                return false;
+            } else {
+                toWrite.add(file);
             }
+        }
+        for (String file : targetFiles.keySet()) {
+            if (!changes.containsKey(file) && !new File("./" + file).exists()) {
+                toWrite.add(file);
+            }
+        }
+        HashMap<String, String> writes = new HashMap<String, String>();
+        for (String file : toWrite) {
+            writes.put(file, targetFiles.get(file));
+        }
+        int deleted = 0;
+        for (String file : toDelete) {
+            if (new File("./" + file).exists()) {
+                deleted += 1;
+            }
+        }
+        if (!CheckoutWriter.apply(writes, toDelete)) {
+            return false;
+        }
+        if (verbose()) {
+            long bytes = 0;
+            for (String file : toWrite) {
+                bytes += new File("./" + file).length();
+            }
+            System.err.println("Wrote " + toWrite.size() + " files ("
+                    + bytes + " bytes), deleted " + deleted + " files.");
+        }
+        return true;
+    }
+
+    /** Returns the paths of the files below DIR, relative to DIR and with /
+     * between names. The .gitlet directory is left out. */
+    static String[] filesIn(File dir) {
+        ArrayList<String> paths = new ArrayList<String>();
+        filesIn(dir, "", paths);
+        return paths.toArray(new String[paths.size()]);
+    }
 
-            for (String file : workingFiles) {
-                File inWork = new File("./" + file);
-                if (!inWork.isDirectory() && !file.equals(".gitignore")
-                        && !file.equals("Makefile")) {
-                    inWork.delete();
+    /** Adds to PATHS the paths of the files below DIR, each with PREFIX in
+     * front of it. */
+    private static void filesIn(File dir, String prefix,
+                                ArrayList<String> paths) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isDirectory()) {
+                if (!name.equals(".gitlet")) {
+                    filesIn(file, prefix + name + "/", paths);
                 }
+            } else {
+                paths.add(prefix + name);
+            }
+        }
+    }
+
+    /** Deletes the file PATH below DIR, and then any directories between
+     * them that it leaves empty. Returns true if the file was deleted. */
+    static boolean deleteFile(File dir, String path) {
+        File file = new File(dir, path);
+        if (!file.delete()) {
+            return false;
+        }
+        for (File parent = file.getParentFile(); !parent.equals(dir)
+                 && parent.delete(); parent = parent.getParentFile()) {
+            continue;
+        }
+        return true;
+    }
+
+    /** Returns true if extra reports, such as the amount of work done by
+     * checkout, were asked for with the system property gitlet.verbose or
+     * the environment variable GITLET_VERBOSE. */
+    static boolean verbose() {
+        return Boolean.getBoolean("gitlet.verbose")
+                || System.getenv("GITLET_VERBOSE") != null;
+    }
+
+    /** Shows, in unified format, how files differ. With no operands,
+     * compares the stage, or the head commit for files not staged, with
+     * the working directory; "--staged" compares the head commit with the
+     * stage; one commit id compares that commit with the working
+     * directory; and two compare those commits. Operands after "--" limit
+     * the comparison to those paths and the files below them. Files whose
+     * contents have the same id on both sides are never read, and two
+     * commits are compared through their trees. */
+    public static void diffStatement() {
+        ArrayList<String> ids = new ArrayList<String>();
+        ArrayList<String> paths = new ArrayList<String>();
+        boolean staged = false;
+        for (int i = 1; i < _args.length; i += 1) {
+            if (_args[i].equals("--")) {
+                paths.addAll(Arrays.asList(_args).subList(i + 1, _args.length));
+                break;
+            } else if (_args[i].equals("--staged")) {
+                staged = true;
+            } else {
+                ids.add(_args[i]);
             }
-            String[] fileNames = new File("./.gitlet/CommitFiles/").list();
-            for (String file : fileNames) {
-                if (branchHead.getBlobsMap().containsValue(file)) {
-                    File comFile = new File("./.gitlet/CommitFiles/" + file);
-                    byte[] branchFileContents = Utils.readContents(comFile);
-                    File currFile = new File("./"
-                            + getKey(branchHead.getBlobsMap(), file));
-                    Utils.writeContents(currFile, branchFileContents);
+        }
+        if (ids.size() > 2 || (staged && !ids.isEmpty())) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        ArrayList<Commit> commits = new ArrayList<Commit>();
+        for (String id : ids) {
+            Commit commit = findCommit(id);
+            if (commit == null) {
+                return;
+            }
+            commits.add(commit);
+        }
+        Diff.Side from = new Diff.Side();
+        Diff.Side to = new Diff.Side();
+        if (commits.size() == 2) {
+            TreeMap<String, String[]> changes = FileTree.diff(
+                    commits.get(0).getTreeId(), commits.get(1).getTreeId());
+            for (String path : changes.keySet()) {
+                String[] shas = changes.get(path);
+                if (shas[0] != null) {
+                    from.put(path, shas[0]);
                 }
+                if (shas[1] != null) {
+                    to.put(path, shas[1]);
+                }
+            }
+        } else if (staged) {
+            addCommit(from, head);
+            addStage(to);
+        } else {
+            if (commits.isEmpty()) {
+                addStage(from);
+            } else {
+                addCommit(from, commits.get(0));
+            }
+            TreeSet<String> tracked = new TreeSet<String>(from.paths());
+            Diff.Side index = new Diff.Side();
+            addStage(index);
+            tracked.addAll(index.paths());
+            addWorking(to, tracked);
+        }
+        TreeSet<String> shown = new TreeSet<String>(from.paths());
+        shown.addAll(to.paths());
+        if (!paths.isEmpty()) {
+            shown.removeIf(path -> !isBelow(path, paths));
+        }
+        OutputStream out = new BufferedOutputStream(System.out);
+        try {
+            Diff.write(from, to, shown, out);
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("IOException while writing the diff.");
+        }
+    }
+
+    /** Adds every file of COMMIT to SIDE. */
+    static void addCommit(Diff.Side side, Commit commit) {
+        HashMap<String, String> files = commit.getBlobsMap();
+        for (String path : files.keySet()) {
+            side.put(path, files.get(path));
+        }
+    }
 
+    /** Adds to SIDE the files as the next commit would have them: those of
+     * the head commit, with staged files replacing them and files staged
+     * for removal left out. */
+    static void addStage(Diff.Side side) {
+        addCommit(side, head);
+        HashMap<String, String> changes = StageIndex.get().changes();
+        for (String path : changes.keySet()) {
+            if (changes.get(path) == null) {
+                side.remove(path);
+            } else {
+                side.put(path, changes.get(path));
             }
-            String[] removedFiles =
-                    new File("./.gitlet/RemovedFiles").list();
-            for (String r: removedFiles) {
-                File c = new File("./.gitlet/RemovedFiles/" + r);
-                c.delete();
+        }
+    }
+
+    /** Adds to SIDE those of PATHS that are in the working directory. */
+    static void addWorking(Diff.Side side, Set<String> paths) {
+        ArrayList<File> files = new ArrayList<File>();
+        for (String path : paths) {
+            File file = new File("./" + path);
+            if (file.isFile()) {
+                files.add(file);
             }
-            for (String f: stagedFiles) {
-                File d = new File("./.gitlet/stage/" + f);
-                d.delete();
+        }
+        HashMap<File, String> shas = StatCache.get().sha1(files);
+        for (String path : paths) {
+            File file = new File("./" + path);
+            if (shas.containsKey(file)) {
+                side.put(path, shas.get(file), file);
             }
-            head = branchHead;
-            branch = branchName;
         }
     }
 
-    /** Helper method that returns a file's name given the Hashmap it is
-     * contained in and its sha-1 code BLOBS, VALUE. */
-    public static String getKey(HashMap<String, String> blobs, String value) {
-        for (String key : blobs.keySet()) {
-            if (blobs.get(key).equals(value)) {
-                return key;
+    /** Returns true if PATH is one of PATHS or is below one of them. */
+    static boolean isBelow(String path, List<String> paths) {
+        for (String p : paths) {
+            String prefix = p.endsWith("/") ? p : p + "/";
+            if (path.equals(p) || path.startsWith(prefix) || p.equals(".")) {
+                return true;
             }
         }
-        return null;
+        return false;
     }
 
     /** Takes the branch name(arg[1]) and the head commit
@@ -506,58 +888,19 @@ public class Main {
         }
     }
 
-    /** Resets the head to the given commitID. If the commitID does not exits
+    /** Resets the head to the given commitID, which may be any unique prefix
+     * of the id. If the commitID does not exits
      * or there are any currently untracked files a notice will be raised.
      * Otherwise, the head is set to the given commit and the branch is 
       * set to the commit's branch. */
     public static void resetStatement() {
         String commitID = _args[1];
-        String[] commits = new File("./.gitlet/log/").list();
-        Commit commit = Commit.load(commitID + ".ser");
-        if (!(Arrays.asList(commits).contains(commitID + ".ser"))) {
-            System.out.println("No commit with that id exists.");
-        } else {
-            HashMap<String, String> commitFiles = commit.getBlobsMap();
-            String[] workingFiles = new File("./").list();
-            String[] stagedFiles = new File("./.gitlet/stage").list();
-            for (String file: workingFiles) {
-                if (!commitFiles.containsKey(file)
-                        && !Arrays.asList(stagedFiles).contains(file)
-                        && commit.getBlobsMap().containsKey(file)) {
-                    System.out.println("There is an untracked file in "
-                            + "the way; delete it or add it first.");
-                    return;
-                }
-            }
-
-            for (String file : workingFiles) {
-                File inWork = new File("./" + file);
-                if (!inWork.isDirectory() && !file.equals(".gitignore")
-                        && !file.equals("Makefile")) {
-                    inWork.delete();
-                }
-            }
-
-            String[] fileNames = new File("./.gitlet/CommitFiles/").list();
-            for (String file : fileNames) {
-                if (commit.getBlobsMap().containsValue(file)) {
-                    File comFile = new File("./.gitlet/CommitFiles/" + file);
-                    byte[] commitFileContents = Utils.readContents(comFile);
-                    File currFile = new File("./"
-                            + getKey(commit.getBlobsMap(), file));
-                    Utils.writeContents(currFile, commitFileContents);
-                }
-            }
-
-            String[] removedFiles = new File("./.gitlet/RemovedFiles").list();
-            for (String r: removedFiles) {
-                File c = new File("./.gitlet/RemovedFiles/" + r);
-                c.delete();
-            }
-            for (String f: stagedFiles) {
-                File d = new File("./.gitlet/stage/" + f);
-                d.delete();
+        Commit commit = findCommit(commitID);
+        if (commit != null) {
+            if (!switchFiles(commit)) {
+                return;
             }
+            StageIndex.get().clear();
 
             head = commit;
             branch = commit.getBranchName();
@@ -565,143 +908,120 @@ public class Main {
         }
     }
 
-    /** Merges files from the given branch into the current branch. */
+    /** Merges files from the given branch into the current branch. Every
+     * path in the head, the given branch or their split point is decided on
+     * its own from its three blob codes; the files that need writing are
+     * then checked out or merged in parallel, and the stage is updated in
+     * one batch once they are all written. */
     public static void mergeStatement() {
         String branchName = _args[1];
         String branchID = tree.getBranches().get(branchName);
         Commit branchHead = Commit.load(branchID + ".ser");
         Commit splitPt = findSplit(head, branchHead);
         noConflict = true;
-        String[] stagedFiles = new File("./.gitlet/stage").list();
-        if (validMerge(branchID, splitPt, branchHead, stagedFiles)) {
-            HashMap<String, String> branchFiles = branchHead.getBlobsMap();
-            HashMap<String, String> splitFiles = splitPt.getBlobsMap();
-            HashMap<String, String> headFiles = head.getBlobsMap();
-            String[] allFileNames = new File("./.gitlet/CommitFiles/").list();
-            for (String name : allFileNames) {
-                String fileName = "";
-                ArrayList<String> seenFiles = new ArrayList<String>();
-                if (getKey(branchFiles, name) != null) {
-                    fileName = getKey(branchFiles, name);
-                } else if (getKey(splitFiles, name) != null) {
-                    fileName = getKey(splitFiles, name);
-                } else if (getKey(headFiles, name) != null) {
-                    fileName = getKey(headFiles, name);
-                }
-                if (!seenFiles.contains(fileName)) {
-                    seenFiles.add(fileName);
-                    String branchFileCode = branchFiles.get(fileName);
-                    String headFileCode = headFiles.get(fileName);
-                    String splitFileCode = splitFiles.get(fileName);
-                    Boolean fileInBranch = branchFiles.containsKey(fileName);
-                    Boolean fileInHead = headFiles.containsKey(fileName);
-                    Boolean fileInSplit = splitFiles.containsKey(fileName);
-                    Boolean branchEqualsSplit = compareCodes(branchFileCode, splitFileCode);
-                    Boolean headEqualsSplit = compareCodes(headFileCode, splitFileCode);
-
-                    if (fileInBranch && fileInHead && fileInSplit) {
-                        mergeHelper(branchEqualsSplit, headEqualsSplit, fileName, branchFiles,
-                                branchID, branchFileCode,
-                                headFiles, headFileCode);
-                    } else if (fileInBranch && !fileInHead && !fileInSplit) {
-                        checkoutCommit(branchID, getKey(branchFiles, branchFileCode));
-                        addFile(fileName);
-                    } else if (!fileInBranch && fileInHead && fileInSplit) {
-                        if (headEqualsSplit) {
-                            rmFile(fileName);
-                        } else {
-                            mergeFiles(headFileCode, branchFileCode, fileName);
-                        }
-                    } else if (!fileInBranch && fileInHead && !fileInSplit) {
-                        checkoutCommit(head.getShaCode(), getKey(headFiles, headFileCode));
-                        addFile(fileName);
-                    } else if (fileInBranch && fileInHead && !fileInSplit) {
-                        mergeFiles(headFileCode, branchFileCode, fileName);
-                    } else if (fileInBranch && !fileInHead && fileInSplit) {
-                        if (branchEqualsSplit) {
-                            continue;
-                        } else {
-                            mergeFiles(headFileCode, branchFileCode, fileName);
-                        }
-                    }
+        StageIndex stage = StageIndex.get();
+        if (!validMerge(branchID, splitPt, branchHead)) {
+            return;
+        }
+        HashMap<String, String> branchFiles = branchHead.getBlobsMap();
+        HashMap<String, String> splitFiles = splitPt.getBlobsMap();
+        HashMap<String, String> headFiles = head.getBlobsMap();
+        TreeSet<String> paths = new TreeSet<String>();
+        paths.addAll(branchFiles.keySet());
+        paths.addAll(splitFiles.keySet());
+        paths.addAll(headFiles.keySet());
+        ArrayList<String> taken = new ArrayList<String>();
+        ArrayList<String> removed = new ArrayList<String>();
+        ArrayList<String> merged = new ArrayList<String>();
+        for (String path : paths) {
+            String splitCode = splitFiles.get(path);
+            String headCode = headFiles.get(path);
+            String branchCode = branchFiles.get(path);
+            if (Objects.equals(headCode, branchCode)
+                    || Objects.equals(branchCode, splitCode)) {
+                continue;
+            } else if (!Objects.equals(headCode, splitCode)) {
+                merged.add(path);
+            } else if (branchCode == null) {
+                removed.add(path);
+            } else {
+                taken.add(path);
+            }
+        }
+        int count = taken.size();
+        String[] ids = new String[count + merged.size()];
+        ScanEngine.forEach(ids.length, i -> {
+            if (i < count) {
+                String path = taken.get(i);
+                ObjectStore.copyTo(branchFiles.get(path), new File(path));
+                ids[i] = branchFiles.get(path);
+            } else {
+                String path = merged.get(i - count);
+                if (mergeFile(path, splitFiles.get(path),
+                        headFiles.get(path), branchFiles.get(path))) {
+                    ids[i] = ObjectStore.writeFile(new File(path));
                 }
             }
-            printMergeMessage(branchName);
+        });
+        for (int i = 0; i < ids.length; i += 1) {
+            String path = i < count ? taken.get(i) : merged.get(i - count);
+            if (ids[i] != null) {
+                stage.add(path, ids[i]);
+            } else {
+                noConflict = false;
+            }
         }
-    }
-
-
-    /** Helper for merging that returns true if two file codes are the same. If
-     * the first code is null (branch or head will be passed in) then a new file is made*/
-    static void compareCodes(code1, code2) {
-        if (code1) {
-            return code1.equals(code2)
-        } else {
-            try {
-                File f = new File("./.gitlet/CommitFiles/" + "null");
-                f.createNewFile();
-                return false;
-            } catch (IOException e) {}
+        for (String path : removed) {
+            deleteFile(WORKING_DIR, path);
+            stage.remove(path);
         }
+        printMergeMessage(branchName, branchHead);
     }
 
-    /** Helpter for merge that adds a file FILE after it is checked out. */
-    static void addFile(String file) {
-        _args = new String[]{"add", file};
-        addStatement();
-    }
-
-    /** Helpter for merge that removes a file FILE. */
-    static void rmFile(String file) {
-        _args = new String[]{"rm", file};
-        rmStatement();
-    }
-
-
-    /** Helper for merge conflict BRANCHNAME.
+    /** Helper for merge conflict BRANCHNAME, whose head is BRANCHHEAD.
      */
-    static void printMergeMessage(String branchName) {
+    static void printMergeMessage(String branchName, Commit branchHead) {
         if (noConflict) {
-            _args = new String[]{"commit", "Merged " + branch + " with "
-                    + branchName + "."};
-            commitStatement();
+            makeCommit("Merged " + branch + " with " + branchName + ".",
+                    branchHead);
         } else {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
-    /** Helper for merge HEQS, BEQS, FILENAME, BRANCHFILES, BRANCHID,
-     *  BRANCHFILECODE, HEADFILES, HEADFILECODE.
-     */
-    static void mergeHelper(Boolean bEqS, Boolean hEqS, String fileName,
-                              HashMap<String, String> branchFiles,
-                              String branchID,
-                              String branchFileCode,
-                              HashMap<String, String> headFiles,
-                              String headFileCode) {
-        if (!bEqS && hEqS) {
-            checkoutCommit(branchID, getKey(branchFiles, branchFileCode));
-            File newFile = new File("./.gitlet/CommitFiles/" + branchFileCode);
-            byte[] newContent = Utils.readContents(newFile);
-            File newStaged = new File("./.gitlet/stage/" + fileName);
-            Utils.writeContents(newStaged, newContent);
-        } else if (bEqS && !hEqS) {
-            checkoutCommit(head.getShaCode(), getKey(headFiles, headFileCode));
-            addFile(fileName);
-        } else if (!bEqS && !hEqS && !headFileCode.equals(branchFileCode)) {
-            mergeFiles(headFileCode, branchFileCode, fileName);
-            noConflict = false;
+    /** Helper for status and merge that hashes, all in one batch, every
+     * working file that may differ from its committed or staged version.
+     * Staged versions are compared by the ids the stage records.
+     * COMMITTEDFILES, STAGED and WORKING are the names in the head commit,
+     * the stage and the working directory. */
+    static HashMap<File, String> hashCandidates(String[] committedFiles,
+                                                Set<String> staged,
+                                                Set<String> working) {
+        ArrayList<File> files = new ArrayList<File>();
+        for (String file: committedFiles) {
+            if (working.contains(file)
+                    && !staged.contains(file)) {
+                files.add(new File("./" + file));
+            }
         }
+        for (String file: staged) {
+            if (working.contains(file)) {
+                files.add(new File("./" + file));
+            }
+        }
+        return StatCache.get().sha1(files);
     }
 
     /** Helper method that perfoms the checks if a merge will be necessary
-     *  BRANCHID, SPLITPT, BRANCHHEAD, STAGEDFILES.
+     *  BRANCHID, SPLITPT, BRANCHHEAD.
      * @return
      */
     static boolean validMerge(String branchID, Commit splitPt,
-                              Commit branchHead, String[] stagedFiles) {
-        String[] removedFiles = new File("./.gitlet/RemovedFiles").list();
-        String[] workingFiles = new File("./").list();
+                              Commit branchHead) {
+        StageIndex stage = StageIndex.get();
+        String[] stagedFiles = stage.staged().toArray(new String[0]);
+        String[] removedFiles = stage.removed().toArray(new String[0]);
+        String[] workingFiles = filesIn(WORKING_DIR);
         HashMap<String, String> headFiles = head.getBlobsMap();
         Object[] objects = headFiles.keySet().toArray();
         String[] strObjects;
@@ -710,29 +1030,34 @@ public class Main {
         Boolean valid = false;
         Boolean mod = false;
         Boolean untracked = false;
+        HashSet<String> working =
+            new HashSet<String>(Arrays.asList(workingFiles));
+        HashSet<String> staged = new HashSet<String>(stage.staged());
+        HashSet<String> removed = new HashSet<String>(stage.removed());
+        HashMap<File, String> shas =
+            hashCandidates(committedFiles, staged, working);
         for (String file: committedFiles) {
-            if (Arrays.asList(workingFiles).contains(file)
-                    && !Arrays.asList(stagedFiles).contains(file)) {
+            if (working.contains(file)
+                    && !staged.contains(file)) {
                 File workFile = new File("./" + file);
-                String sha = Utils.sha1(Utils.readContents(workFile));
+                String sha = shas.get(workFile);
                 if (!sha.equals(headFiles.get(file))) {
                     mod = true;
                 }
             }
-            if (!Arrays.asList(workingFiles).contains(file)
-                    && !Arrays.asList(removedFiles).contains(file)) {
+            if (!working.contains(file)
+                    && !removed.contains(file)) {
                 mod = true;
             }
         }
         for (String file: stagedFiles) {
-            if (!Arrays.asList(workingFiles).contains(file)
-                    && !Arrays.asList(removedFiles).contains(file)) {
+            if (!working.contains(file)
+                    && !removed.contains(file)) {
                 mod = true;
-            } else if (Arrays.asList(workingFiles).contains(file)) {
+            } else if (working.contains(file)) {
                 File workFile = new File("./" + file);
-                File stageFile = new File("./.gitlet/stage/" + file);
-                String sha = Utils.sha1(Utils.readContents(workFile));
-                String stagesha = Utils.sha1(Utils.readContents(stageFile));
+                String sha = shas.get(workFile);
+                String stagesha = stage.sha(file);
                 if (!sha.equals(stagesha)) {
                     mod = true;
                 } 
@@ -741,7 +1066,7 @@ public class Main {
         for (String file: workingFiles) {
             File inWork = new File("./" + file);
             if (!(headFiles.containsKey(file))
-                    && !(Arrays.asList(stagedFiles).contains(file))
+                    && !(staged.contains(file))
                     && !inWork.isDirectory() && !file.equals(".gitignore")
                     && !file.equals("Makefile")) {
                 untracked = true;
@@ -756,6 +1081,9 @@ public class Main {
             System.out.println("A branch with that name does not exist.");
         } else if (branchID.equals(head.getShaCode())) {
             System.out.println("Cannot merge a branch with itself.");
+        } else if (splitPt == null) {
+            System.out.println("Given branch shares no history with the "
+                    + "current branch.");
         } else if (splitPt.getShaCode().equals(branchHead.getShaCode())) {
             System.out.println("Given branch is an ancestor of the "
                     + "current branch.");
@@ -769,101 +1097,222 @@ public class Main {
     }
 
 
-    /** Helper method for case 7 of the merge method (merge conflict).
-     * HEADFILECODE, BRANCHFILECODE, FILENAME.
+    /** Helper for merge that merges, line by line, the versions of PATH
+     * in the head (HEADCODE) and the given branch (BRANCHCODE) against its
+     * version at the split point (SPLITCODE), and writes the result in one
+     * go. Any code is null if the file is missing from that commit. Only
+     * lines both sides changed differently get conflict markers; returns
+     * true if there are none. Touches nothing but PATH, so merges of
+     * different paths may run at the same time.
      */
-    static void mergeFiles(String headFileCode,
-                           String branchFileCode, String fileName) {
-        try {
-            File mergedFile = new File("./" + fileName);
-            mergedFile.delete();
-            File headFile = new File("./.gitlet/CommitFiles/" + headFileCode);
-            FileWriter writer1 = new FileWriter(mergedFile, true);
-            if (headFile.length() == 0) {
-                writer1.write("<<<<<<< HEAD");
-            } else {
-                writer1.write("<<<<<<< HEAD" + "\n");
-            }
-            writer1.close();
-            byte[] headFileContents = Utils.readContents(headFile);
-            Utils.addContents(mergedFile, headFileContents);
-
-            File branchFile = new File("./.gitlet/CommitFiles/"
-                    + branchFileCode);
-            FileWriter writer2 = new FileWriter(mergedFile, true);
-            if (branchFile.length() == 0) {
-                writer2.write("\n" + "=======");
-            } else {
-                writer2.write("\n" + "=======" + "\n");
-            }
-            writer2.close();
-            
-            byte[] branchFileContents = Utils.readContents(branchFile);
-            Utils.addContents(mergedFile, branchFileContents);
+    static boolean mergeFile(String path, String splitCode,
+                             String headCode, String branchCode) {
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        boolean clean = Merge3.merge(contents(splitCode),
+                contents(headCode), contents(branchCode), merged);
+        Materializer.copy(new ByteArrayInputStream(merged.toByteArray()),
+                new File(path));
+        return clean;
+    }
 
-            FileWriter writer3 = new FileWriter(mergedFile, true);
-            writer3.write("\n" + ">>>>>>>");
-            writer3.close();
-            noConflict = false;
-        } catch (IOException e) {
-            return;
-        }
+    /** Returns the contents of the blob CODE, or nothing if CODE is null
+     * because the file is missing on one side of a merge. */
+    static byte[] contents(String code) {
+        return code == null ? new byte[0] : ObjectStore.read(code);
     }
 
     /** Helper method that returns the split point SPLITPT between two branches
      * BRANCH1 and BRANCH2. Returns null if there is no split point (no common
-     * ancestor). */
+     * ancestor). The split point comes from the commit-graph, which walks
+     * both histories once in generation order. */
     static Commit findSplit(Commit branch1, Commit branch2) {
-        Commit copy1 = branch1;
-        while (copy1 != null) {
-            Commit splitPt = branch2;
-            while (splitPt != null) {
-                if (splitPt.getShaCode().equals(copy1.getShaCode())) {
-                    return splitPt;
-                }
-                splitPt = splitPt.getParent();
+        if (branch1 == null || branch2 == null) {
+            return null;
+        }
+        String splitID = CommitGraph.get().mergeBase(branch1.getShaCode(),
+                branch2.getShaCode());
+        if (splitID == null) {
+            return null;
+        }
+        return Commit.load(splitID + ".ser");
+    }
+
+    /** Removes the commits and objects that no branch or HEAD can reach
+     * any more, such as those left behind by rm-branch and reset. Anything
+     * written within the grace period, GRACE_DAYS days unless given with
+     * --grace=DAYS, is kept in case a command still running needs it. With
+     * --dry-run, only reports what would be removed. */
+    public static void gcStatement() {
+        boolean dryRun = false;
+        long days = GRACE_DAYS;
+        for (int i = 1; i < _args.length; i += 1) {
+            if (_args[i].equals("--dry-run")) {
+                dryRun = true;
+            } else if (_args[i].matches("--grace=[0-9]+")) {
+                days = Long.parseLong(_args[i].substring(8));
+            } else {
+                System.out.println("Incorrect operands.");
+                return;
             }
-            copy1 = copy1.getParent();
         }
-        return null;
+        ArrayList<String> roots =
+            new ArrayList<String>(tree.getBranches().values());
+        roots.add(head.getShaCode());
+        long cutoff = System.currentTimeMillis() - days * MILLIS_PER_DAY;
+        Collector.collect(roots,
+                StageIndex.get().changes().values(), cutoff, dryRun);
     }
 
-    /** Puts the head, tree, and branch in bytes. */
+    /** Starts a daemon that keeps this repository loaded and runs the
+     * commands of later gitlet invocations, or with "stop", reports that
+     * no daemon is running (a running one handles "stop" itself). */
+    public static void daemonStatement() {
+        if (_args.length == 2 && _args[1].equals("stop")) {
+            System.out.println("No gitlet daemon is running.");
+        } else if (_args.length != 1) {
+            System.out.println("Incorrect operands.");
+        } else {
+            Daemon.serve();
+        }
+    }
+
+    /** Puts the head, tree, and branch in bytes, as one record of the
+     * state log. Only the id of the head is kept; the commit itself is in
+     * the log. Does nothing if they were never loaded, or if the command
+     * left them as they were saved. Every CHECKPOINT_RECORDS records, the
+     * state is checkpointed. */
     static void serialize() throws IOException {
-        File heads = new File("./.gitlet/HEAD.ser");
-        FileOutputStream headIn = new FileOutputStream(heads);
-        ObjectOutputStream headOut = new ObjectOutputStream(headIn);
-        headOut.writeObject(head);
+        if (head == null) {
+            return;
+        }
+        byte[] state = Codec.encode(STATE_MAGIC, Main::writeState);
+        if (Arrays.equals(state, savedState)) {
+            return;
+        }
+        int records = StateLog.append(state);
+        savedState = state;
+        if (records >= CHECKPOINT_RECORDS) {
+            checkpoint();
+        }
+    }
 
-        File trees = new File("./.gitlet/tree.ser");
-        FileOutputStream treeIn = new FileOutputStream(trees);
-        ObjectOutputStream treeOut = new ObjectOutputStream(treeIn);
-        treeOut.writeObject(tree);
+    /** Writes the head, tree, branch, and stage to their own files,
+     * syncing each, and empties the state log, whose records they make
+     * redundant. */
+    static void checkpoint() throws IOException {
+        if (head == null) {
+            return;
+        }
+        Codec.saveSynced(HEAD_FILE, HEAD_MAGIC,
+            out -> Codec.writeString(out, head.getShaCode()));
+        Codec.saveSynced(TREE_FILE, Tree.MAGIC, tree::write);
+        Codec.saveSynced(BRANCH_FILE, BRANCH_MAGIC,
+            out -> Codec.writeString(out, branch));
+        StageIndex.checkpoint();
+        StateLog.clear();
+        savedState = Codec.encode(STATE_MAGIC, Main::writeState);
+    }
 
-        File branches = new File("./.gitlet/branch.ser");
-        FileOutputStream branchIn = new FileOutputStream(branches);
-        ObjectOutputStream branchOut = new ObjectOutputStream(branchIn);
-        branchOut.writeObject(branch);
+    /** Writes the id of the head, the branch, the tree, and the stage to
+     * OUT. */
+    private static void writeState(DataOutputStream out) throws IOException {
+        Codec.writeString(out, head.getShaCode());
+        Codec.writeString(out, branch);
+        tree.write(out);
+        StageIndex.get().writeEntries(out);
     }
 
-    /** Turns the bytes of the head, tree, and branch into objects  . */
+    /** Turns the bytes of the head, tree, and branch into objects  . Does
+     * nothing if they are already loaded, as they are in the daemon. A
+     * repository saved with Java serialization is converted first. The
+     * last complete record of the state log, if there is one, is newer
+     * than the checkpoint and is used instead, for the stage too if the
+     * record holds it. */
     static void deserialize() throws IOException, ClassNotFoundException {
-        File heads = new File("./.gitlet/HEAD.ser");
-        FileInputStream headIn = new FileInputStream(heads);
-        ObjectInputStream headOut = new ObjectInputStream(headIn);
-        head = (Commit) headOut.readObject();
+        if (stateLoaded) {
+            return;
+        }
+        if (SERIALIZED_HEAD.exists()) {
+            migrate();
+        }
+        byte[] state = StateLog.recover();
+        if (state != null) {
+            DataInputStream in = Codec.open(state, STATE_MAGIC);
+            head = Commit.load(Codec.readString(in) + ".ser");
+            branch = Codec.readString(in);
+            tree = Tree.read(in);
+            if (in.available() > 0) {
+                StageIndex.recover(in);
+            }
+        } else {
+            String headId =
+                Codec.readString(Codec.open(HEAD_FILE, HEAD_MAGIC));
+            head = Commit.load(headId + ".ser");
+            tree = Tree.read(Codec.open(TREE_FILE, Tree.MAGIC));
+            branch = Codec.readString(Codec.open(BRANCH_FILE, BRANCH_MAGIC));
+            state = Codec.encode(STATE_MAGIC, Main::writeState);
+        }
+        savedState = state;
+        stateLoaded = true;
+    }
 
+    /** Converts a repository whose commits, head, tree, and branch were
+     * saved with Java serialization to the binary format, then removes the
+     * old files. */
+    static void migrate() throws IOException, ClassNotFoundException {
+        Codec.migrateLog();
         File trees = new File("./.gitlet/tree.ser");
-        FileInputStream treeIn = new FileInputStream(trees);
-        ObjectInputStream treeOut = new ObjectInputStream(treeIn);
-        tree = (Tree) treeOut.readObject();
-
         File branches = new File("./.gitlet/branch.ser");
-        FileInputStream branchIn = new FileInputStream(branches);
-        ObjectInputStream branchOut = new ObjectInputStream(branchIn);
-        branch = (String) branchOut.readObject();
+        head = (Commit) Codec.readObject(SERIALIZED_HEAD);
+        tree = (Tree) Codec.readObject(trees);
+        branch = (String) Codec.readObject(branches);
+        checkpoint();
+        trees.delete();
+        branches.delete();
+        SERIALIZED_HEAD.delete();
+    }
+
+    /** Makes the next command read the head, tree, and branch from disk
+     * again, dropping whatever a failed command left in memory. */
+    static void reloadState() {
+        stateLoaded = false;
+        StageIndex.reload();
     }
 
+    /** File holding the id of the head commit. */
+    private static final File HEAD_FILE = new File("./.gitlet/HEAD");
+    /** File holding the branches. */
+    private static final File TREE_FILE = new File("./.gitlet/tree");
+    /** File holding the name of the current branch. */
+    private static final File BRANCH_FILE = new File("./.gitlet/branch");
+    /** The head as saved with Java serialization, in older repositories. */
+    private static final File SERIALIZED_HEAD = new File("./.gitlet/HEAD.ser");
+    /** First word of HEAD_FILE. */
+    private static final int HEAD_MAGIC = 0x47484544;
+    /** First word of BRANCH_FILE. */
+    private static final int BRANCH_MAGIC = 0x47424348;
+    /** First word of a record of the state log. */
+    private static final int STATE_MAGIC = 0x47535445;
+    /** Records the state log may hold before the state is checkpointed. */
+    private static final int CHECKPOINT_RECORDS = 64;
+
+    /** Length of a date written as yyyy-MM-dd. */
+    private static final int DATE_LENGTH = 10;
+    /** Dates as log --since takes them. */
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd")
+                    .withResolverStyle(ResolverStyle.STRICT);
+    /** Times as log prints them and --since takes them. */
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss")
+                    .withResolverStyle(ResolverStyle.STRICT);
+
+    /** Most commits findCommit names when an id prefix is ambiguous. */
+    private static final int MAX_CANDIDATES = 5;
+
+    /** The working directory. */
+    static final File WORKING_DIR = new File(".");
+
     /** The arguments passed into the main method. */
     private static String[] _args;
 
@@ -876,6 +1325,16 @@ public class Main {
     /** Current branch. */
     private static String branch;
 
+    /** True once the head, tree, and branch have been read from disk. */
+    private static boolean stateLoaded;
+
+    /** The head, tree, and branch as last saved, in bytes. */
+    private static byte[] savedState;
+
     /** A Global variable for the functions involved in merging. */
     private static boolean noConflict;
+    /** Days for which gc keeps unreachable commits and objects. */
+    static final long GRACE_DAYS = 14;
+    /** Milliseconds in a day. */
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 }
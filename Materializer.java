@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+
+/** Materializer for Gitlet, the mini version-control system. Writes blobs
+ *  from the object store into the working directory. A plain blob is
+ *  copied without its bytes passing through the Java heap: as a
+ *  copy-on-write reflink where the file system has them, as a hard link
+ *  if asked for with the system property gitlet.checkout=hardlink (or
+ *  GITLET_CHECKOUT=hardlink), and otherwise with FileChannel.transferTo,
+ *  which leaves the copy to the kernel. A strategy that fails on a file
+ *  system is not tried there again. Only blobs the object store keeps
+ *  plain, those of at least ObjectStore.PLAIN_MIN_SIZE bytes that
+ *  deflate barely shrinks, take these paths. Source files and other
+ *  blobs that compress are deflated or packed in the store, and are
+ *  inflated as a stream whatever the strategy, so a checkout of mostly
+ *  text gains little from them. Every file is replaced rather than
+ *  written over, so gitlet itself never changes a blob through a hard
+ *  link to it.
+ *  Hard links are only for checkouts that are read and not edited: the
+ *  blob is made read-only, but an editor that overrides that, or any
+ *  program that writes a file in place, changes the stored blob as well.
+ *  The object store hashes a plain blob with more than one link before
+ *  using it, so such a change is reported instead of spreading to other
+ *  checkouts, but the old contents are lost.
+ *  @author Yonas/Juno
+ */
+class Materializer {
+
+    /** Ways of copying a plain blob. */
+    enum Strategy {
+        /** A hard link to the blob, which is made read-only first; meant
+         * for checkouts that are only read. */
+        HARDLINK,
+        /** A copy-on-write clone made by cp --reflink=always. */
+        REFLINK,
+        /** A copy made by FileChannel.transferTo. */
+        TRANSFER
+    }
+
+    /** Makes DEST a copy of the plain blob SOURCE, with the first of the
+     * strategies for SOURCE that works on DEST's file system. */
+    static void copy(File source, File dest) {
+        prepare(dest);
+        FileStore store = fileStore(dest);
+        for (Strategy strategy : strategies(source)) {
+            if (!hasFailed(store, strategy)) {
+                if (copy(source, dest, strategy)) {
+                    return;
+                }
+                fail(store, strategy);
+            }
+        }
+    }
+
+    /** Makes DEST a copy of the plain blob SOURCE with STRATEGY, and
+     * returns true if that worked. DEST must not exist. TRANSFER always
+     * works or throws IllegalArgumentException. */
+    static boolean copy(File source, File dest, Strategy strategy) {
+        switch (strategy) {
+        case HARDLINK:
+            try {
+                source.setReadOnly();
+                Files.createLink(dest.toPath(), source.toPath());
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                return false;
+            }
+        case REFLINK:
+            return reflink(source, dest);
+        default:
+            Utils.copy(source, dest);
+            return true;
+        }
+    }
+
+    /** Returns true if checkouts were asked to hard-link plain blobs. */
+    static boolean linksBlobs() {
+        return "hardlink".equals(System.getProperty("gitlet.checkout",
+                System.getenv("GITLET_CHECKOUT")));
+    }
+
+    /** Makes DEST hold everything that can be read from IN. */
+    static void copy(InputStream in, File dest) {
+        prepare(dest);
+        try {
+            Files.copy(in, dest.toPath());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns the strategies to try for the plain blob SOURCE, best
+     * first. Reflinks cost a process each, so they are only tried for
+     * blobs of at least REFLINK_MIN_SIZE bytes. */
+    private static List<Strategy> strategies(File source) {
+        ArrayList<Strategy> strategies = new ArrayList<Strategy>();
+        if (linksBlobs()) {
+            strategies.add(Strategy.HARDLINK);
+        }
+        if (source.length() >= REFLINK_MIN_SIZE) {
+            strategies.add(Strategy.REFLINK);
+        }
+        strategies.add(Strategy.TRANSFER);
+        return strategies;
+    }
+
+    /** Clones SOURCE as DEST with cp --reflink=always, and returns true if
+     * the file system could do that. */
+    private static boolean reflink(File source, File dest) {
+        try {
+            Process cp = new ProcessBuilder("cp", "--reflink=always", "--",
+                    source.getPath(), dest.getPath())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (cp.waitFor() == 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dest.delete();
+        return false;
+    }
+
+    /** Makes way for a new file DEST: creates its directory and removes
+     * the file that is there. */
+    private static void prepare(File dest) {
+        if (dest.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        Utils.makeParent(dest);
+        try {
+            Files.deleteIfExists(dest.toPath());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns the file system DEST, whose directory exists, is on, or
+     * null if that cannot be told. */
+    private static FileStore fileStore(File dest) {
+        try {
+            return Files.getFileStore(
+                    dest.getAbsoluteFile().getParentFile().toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Returns true if STRATEGY has failed on the file system STORE. */
+    private static synchronized boolean hasFailed(FileStore store,
+                                                  Strategy strategy) {
+        return FAILED.containsKey(store) && FAILED.get(store).contains(strategy);
+    }
+
+    /** Records that STRATEGY failed on the file system STORE. */
+    private static synchronized void fail(FileStore store, Strategy strategy) {
+        FAILED.computeIfAbsent(store, k -> EnumSet.noneOf(Strategy.class))
+            .add(strategy);
+    }
+
+    /** Smallest plain blob that is worth a reflink. */
+    private static final long REFLINK_MIN_SIZE = 1 << 16;
+
+    /** The strategies that failed on each file system. */
+    private static final HashMap<FileStore, EnumSet<Strategy>> FAILED =
+        new HashMap<FileStore, EnumSet<Strategy>>();
+}
@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/** Three-way merges for Gitlet, the mini version-control system. Both
+ *  sides of a merge are compared line by line with the version at the
+ *  split point. Changes that touch different lines of the split version
+ *  are all kept; only where the two sides changed the same lines
+ *  differently does the result get conflict markers, around just those
+ *  lines.
+ *  @author Yonas/Juno
+ */
+class Merge3 {
+
+    /** Writes to OUT the merge of OURS and THEIRS, which were both made
+     * from BASE. Returns true if they merged without conflicts. */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         ByteArrayOutputStream out) {
+        Diff.Lines[] lines = Diff.split(base, ours, theirs);
+        List<int[]> a = Diff.hunks(lines[0].ids, lines[1].ids);
+        List<int[]> b = Diff.hunks(lines[0].ids, lines[2].ids);
+        boolean clean = true;
+        int pos = 0;
+        int ia = 0;
+        int ib = 0;
+        while (ia < a.size() || ib < b.size()) {
+            boolean fromA = ib == b.size()
+                || (ia < a.size() && a.get(ia)[0] <= b.get(ib)[0]);
+            int[] first = fromA ? a.get(ia) : b.get(ib);
+            int lo = first[0];
+            int hi = first[1];
+            int fromHunkA = ia;
+            int fromHunkB = ib;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                while (ia < a.size() && overlaps(a.get(ia), lo, hi)) {
+                    hi = Math.max(hi, a.get(ia)[1]);
+                    ia += 1;
+                    grown = true;
+                }
+                while (ib < b.size() && overlaps(b.get(ib), lo, hi)) {
+                    hi = Math.max(hi, b.get(ib)[1]);
+                    ib += 1;
+                    grown = true;
+                }
+            }
+            write(out, lines[0], pos, lo);
+            int[] ourRange = range(a, fromHunkA, ia, lo, hi);
+            int[] theirRange = range(b, fromHunkB, ib, lo, hi);
+            if (fromHunkB == ib) {
+                write(out, lines[1], ourRange[0], ourRange[1]);
+            } else if (fromHunkA == ia) {
+                write(out, lines[2], theirRange[0], theirRange[1]);
+            } else if (Arrays.equals(lines[1].ids, ourRange[0], ourRange[1],
+                                     lines[2].ids, theirRange[0],
+                                     theirRange[1])) {
+                write(out, lines[1], ourRange[0], ourRange[1]);
+            } else {
+                clean = false;
+                out.writeBytes(OURS_MARKER);
+                writeLines(out, lines[1], ourRange[0], ourRange[1]);
+                out.writeBytes(SEPARATOR);
+                writeLines(out, lines[2], theirRange[0], theirRange[1]);
+                out.writeBytes(THEIRS_MARKER);
+            }
+            pos = hi;
+        }
+        write(out, lines[0], pos, lines[0].size());
+        return clean;
+    }
+
+    /** Returns true if HUNK, a change of some lines of the base, overlaps
+     * the lines LO up to HI of the base. A change that only inserts lines
+     * also overlaps changes that start or end where it inserts. */
+    private static boolean overlaps(int[] hunk, int lo, int hi) {
+        return hunk[0] < hi
+            || (hunk[0] == hi && (hunk[0] == hunk[1] || lo == hi));
+    }
+
+    /** Returns the lines of one side that replace the lines LO up to HI of
+     * the base, given that HUNKS[FROM .. TO) are that side's changes within
+     * them. With no changes, these are the base's own lines. */
+    private static int[] range(List<int[]> hunks, int from, int to,
+                               int lo, int hi) {
+        if (from == to) {
+            return new int[] {lo, hi};
+        }
+        int[] first = hunks.get(from);
+        int[] last = hunks.get(to - 1);
+        return new int[] {first[2] - (first[0] - lo), last[3] + (hi - last[1])};
+    }
+
+    /** Writes lines FROM up to TO of LINES to OUT. */
+    private static void write(ByteArrayOutputStream out, Diff.Lines lines,
+                              int from, int to) {
+        if (from < to) {
+            out.write(lines.data, lines.start(from),
+                    lines.end(to - 1) - lines.start(from));
+        }
+    }
+
+    /** Writes lines FROM up to TO of LINES to OUT, ending them with a
+     * newline if the last one has none, so a marker can follow. */
+    private static void writeLines(ByteArrayOutputStream out,
+                                   Diff.Lines lines, int from, int to) {
+        write(out, lines, from, to);
+        if (from < to && lines.data[lines.end(to - 1) - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+
+    /** Line starting the current branch's side of a conflict. */
+    private static final byte[] OURS_MARKER =
+        "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    /** Line between the two sides of a conflict. */
+    private static final byte[] SEPARATOR =
+        "=======\n".getBytes(StandardCharsets.UTF_8);
+    /** Line ending the given branch's side of a conflict. */
+    private static final byte[] THEIRS_MARKER =
+        ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+}
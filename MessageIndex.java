@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** Commit-message index for Gitlet, the mini version-control system.
+ *  .gitlet/find holds append-only bucket files of (key, commit id)
+ *  records. Keys are whole messages in the msg- buckets, the words of
+ *  each message in the word- buckets and its three-character pieces in
+ *  the gram- buckets, all lower-cased except whole messages. A key always
+ *  lands in the bucket named by the first byte of its SHA-1, so a lookup
+ *  reads one bucket per key instead of every commit in the log. Records
+ *  are framed as RecordFile describes; a bucket found torn or in an older
+ *  format has the whole index rebuilt from the log.
+ *  @author Yonas/Juno
+ */
+class MessageIndex {
+
+    /** Adds COMMIT, which must already be in the log, to the index.
+     * Repositories made before the index get it rebuilt from the log,
+     * which takes in COMMIT as well. */
+    static void add(Commit commit) {
+        if (!INDEX_DIR.exists()) {
+            rebuild();
+            return;
+        }
+        HashMap<File, List<String[]>> records =
+            new HashMap<File, List<String[]>>();
+        collect(commit, records);
+        write(records);
+    }
+
+    /** Returns the ids of the commits whose message is exactly MESSAGE, in
+     * the order they were made. */
+    static List<String> exact(String message) {
+        return new ArrayList<String>(lookup(MSG, message));
+    }
+
+    /** Returns the ids of the commits whose message contains every word of
+     * TEXT, ignoring case, in the order they were made. */
+    static List<String> words(String text) {
+        LinkedHashSet<String> ids = null;
+        for (String word : tokens(text.toLowerCase(Locale.ROOT))) {
+            ids = retain(ids, lookup(WORD, word));
+        }
+        if (ids == null) {
+            return new ArrayList<String>();
+        }
+        return new ArrayList<String>(ids);
+    }
+
+    /** Returns the ids of the commits whose message contains TEXT, ignoring
+     * case, in the order they were made. Only commits holding every
+     * three-character piece of TEXT are loaded to check. */
+    static List<String> substring(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        ArrayList<String> result = new ArrayList<String>();
+        if (lower.length() < GRAM_LENGTH) {
+            for (String[] record : records(MSG)) {
+                if (record[0].toLowerCase(Locale.ROOT).contains(lower)) {
+                    result.add(record[1]);
+                }
+            }
+            return result;
+        }
+        LinkedHashSet<String> ids = null;
+        for (String gram : grams(lower)) {
+            ids = retain(ids, lookup(GRAM, gram));
+        }
+        for (String id : ids) {
+            Commit commit = Commit.load(id + ".ser");
+            if (commit != null && commit.getMessage()
+                    .toLowerCase(Locale.ROOT).contains(lower)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Rebuilds the whole index from the commits in the log. */
+    static void rebuild() {
+        INDEX_DIR.mkdirs();
+        for (File bucket : INDEX_DIR.listFiles()) {
+            bucket.delete();
+        }
+        HashMap<File, List<String[]>> records =
+            new HashMap<File, List<String[]>>();
+        String[] paths = Commit.logFiles();
+        if (paths != null) {
+            for (String path : paths) {
+                collect(Commit.load(path), records);
+            }
+        }
+        write(records);
+    }
+
+    /** Adds to RECORDS, by bucket file, the records that index COMMIT. */
+    private static void collect(Commit commit,
+                                HashMap<File, List<String[]>> records) {
+        String id = commit.getShaCode();
+        String message = commit.getMessage();
+        String lower = message.toLowerCase(Locale.ROOT);
+        addRecord(records, MSG, message, id);
+        for (String word : tokens(lower)) {
+            addRecord(records, WORD, word, id);
+        }
+        for (String gram : grams(lower)) {
+            addRecord(records, GRAM, gram, id);
+        }
+    }
+
+    /** Adds a record of KEY and ID, of the kind KIND, to RECORDS. */
+    private static void addRecord(HashMap<File, List<String[]>> records,
+                                  String kind, String key, String id) {
+        records.computeIfAbsent(bucket(kind, key),
+                k -> new ArrayList<String[]>()).add(new String[] {key, id});
+    }
+
+    /** Appends RECORDS to their bucket files. A bucket found torn or in
+     * an older format has the whole index rebuilt instead. */
+    private static void write(HashMap<File, List<String[]>> records) {
+        for (Map.Entry<File, List<String[]>> entry : records.entrySet()) {
+            ArrayList<byte[]> bytes = new ArrayList<byte[]>();
+            try {
+                for (String[] record : entry.getValue()) {
+                    bytes.add(RecordFile.encode(out -> {
+                        Codec.writeString(out, record[0]);
+                        Codec.writeString(out, record[1]);
+                    }));
+                }
+                if (!RecordFile.append(entry.getKey(), MAGIC, VERSION,
+                        bytes)) {
+                    rebuild();
+                    return;
+                }
+            } catch (IOException e) {
+                System.out.println("IOException while saving the message "
+                        + "index.");
+            }
+        }
+    }
+
+    /** Returns the ids recorded under KEY among the keys of kind KIND. */
+    private static LinkedHashSet<String> lookup(String kind, String key) {
+        LinkedHashSet<String> ids = new LinkedHashSet<String>();
+        for (String[] record : read(bucket(kind, key))) {
+            if (record[0].equals(key)) {
+                ids.add(record[1]);
+            }
+        }
+        return ids;
+    }
+
+    /** Returns every record of kind KIND. */
+    private static List<String[]> records(String kind) {
+        ArrayList<String[]> records = new ArrayList<String[]>();
+        for (int i = 0; i < BUCKETS; i += 1) {
+            records.addAll(read(new File(INDEX_DIR,
+                    String.format("%s%02x", kind, i))));
+        }
+        return records;
+    }
+
+    /** Returns the records in the file BUCKET, which may not exist. */
+    private static List<String[]> read(File bucket) {
+        if (!INDEX_DIR.exists()) {
+            rebuild();
+        }
+        ArrayList<String[]> records = new ArrayList<String[]>();
+        if (!bucket.exists()) {
+            return records;
+        }
+        try {
+            List<byte[]> bytes = RecordFile.read(bucket, MAGIC, VERSION);
+            if (bytes == null) {
+                rebuild();
+                bytes = RecordFile.read(bucket, MAGIC, VERSION);
+            }
+            for (byte[] record : bytes == null ? new ArrayList<byte[]>()
+                                               : bytes) {
+                DataInputStream in = RecordFile.open(record);
+                String key = Codec.readString(in);
+                records.add(new String[] {key, Codec.readString(in)});
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return records;
+    }
+
+    /** Returns ACC with only the ids also in IDS kept, or IDS if ACC is
+     * null. */
+    private static LinkedHashSet<String> retain(LinkedHashSet<String> acc,
+                                                LinkedHashSet<String> ids) {
+        if (acc == null) {
+            return ids;
+        }
+        acc.retainAll(ids);
+        return acc;
+    }
+
+    /** Returns the bucket file for KEY among the keys of kind KIND. */
+    private static File bucket(String kind, String key) {
+        return new File(INDEX_DIR, kind + Utils.sha1(key).substring(0, 2));
+    }
+
+    /** Returns the distinct words of TEXT. */
+    private static LinkedHashSet<String> tokens(String text) {
+        LinkedHashSet<String> words = new LinkedHashSet<String>();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /** Returns the distinct three-character pieces of TEXT. */
+    private static LinkedHashSet<String> grams(String text) {
+        LinkedHashSet<String> grams = new LinkedHashSet<String>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i += 1) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    /** Directory of the bucket files. */
+    private static final File INDEX_DIR = new File("./.gitlet/find");
+    /** Prefix of the buckets of whole messages. */
+    private static final String MSG = "msg-";
+    /** Prefix of the buckets of words. */
+    private static final String WORD = "word-";
+    /** Prefix of the buckets of three-character pieces. */
+    private static final String GRAM = "gram-";
+    /** Length of the pieces substring search looks up. */
+    private static final int GRAM_LENGTH = 3;
+    /** Number of buckets of each kind. */
+    private static final int BUCKETS = 256;
+    /** First word of a bucket file. */
+    private static final int MAGIC = 0x46494e44;
+    /** Version of the bucket format. */
+    private static final int VERSION = 2;
+}
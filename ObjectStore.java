@@ -0,0 +1,526 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Object store for Gitlet, the mini version-control system. Blobs, and
+ *  the trees that list them, are addressed by the SHA-1 of their contents
+ *  and live either as deflated loose files in .gitlet/Objects or inside
+ *  the packs in .gitlet/pack.
+ *  Blobs of at least PLAIN_MIN_SIZE bytes that deflate barely shrinks,
+ *  such as images and archives, are kept as plain files in
+ *  .gitlet/CommitFiles, where repositories from before compression kept
+ *  every blob; only these can be checked out by reflink or hard link.
+ *  Every blob read goes through here, so callers do not care where a
+ *  blob is kept.
+ *  @author Yonas/Juno
+ */
+class ObjectStore {
+
+    /** Returns true if the blob SHA is in the store. */
+    static boolean contains(String sha) {
+        if (new File(LOOSE_DIR, sha).isFile()
+                || new File(PLAIN_DIR, sha).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            if (pack.contains(sha)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the contents of the blob SHA. Throws IllegalArgumentException
+     * if there is no such blob. */
+    static byte[] read(String sha) {
+        File loose = new File(LOOSE_DIR, sha);
+        if (loose.isFile()) {
+            try (InputStream in = open(sha)) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+        File plain = plainFile(sha);
+        if (plain != null) {
+            return Utils.readContents(plain);
+        }
+        for (Pack pack : packs()) {
+            if (pack.contains(sha)) {
+                return pack.read(sha);
+            }
+        }
+        throw new IllegalArgumentException("no object " + sha);
+    }
+
+    /** Writes the contents of the blob SHA to DEST, creating or replacing
+     * it. Plain blobs are materialized by whatever means DEST's file
+     * system allows best, and loose blobs are inflated as a stream, so
+     * memory use does not depend on the size of the blob. */
+    static void copyTo(String sha, File dest) {
+        File plain = plainFile(sha);
+        if (plain != null) {
+            Materializer.copy(plain, dest);
+            return;
+        }
+        try (InputStream in = open(sha)) {
+            Materializer.copy(in, dest);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns the plain file holding the blob SHA, or null if it is
+     * deflated or packed. A plain blob that has been hard-linked into the
+     * working directory is hashed first, since a program that writes the
+     * linked file in place writes the blob too. Throws
+     * IllegalArgumentException if it no longer matches SHA. */
+    static File plainFile(String sha) {
+        File plain = new File(PLAIN_DIR, sha);
+        if (!plain.isFile()) {
+            return null;
+        }
+        if (isLinked(plain) && !sha.equals(Utils.sha1(plain))) {
+            throw new IllegalArgumentException("object " + sha
+                    + " was changed through a hard link to it");
+        }
+        return plain;
+    }
+
+    /** Returns true if FILE may have more than one name: its link count
+     * is more than one or, where the file system does not keep link
+     * counts, hard links are in use. */
+    private static boolean isLinked(File file) {
+        try {
+            Object links = Files.getAttribute(file.toPath(), "unix:nlink");
+            return ((Number) links).intValue() > 1;
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException e) {
+            return Materializer.linksBlobs();
+        }
+    }
+
+    /** Writes the contents of the blob SHA to OUT. */
+    static void copyTo(String sha, OutputStream out) throws IOException {
+        try (InputStream in = open(sha)) {
+            in.transferTo(out);
+        }
+    }
+
+    /** Returns a stream over the contents of the blob SHA. */
+    private static InputStream open(String sha) throws IOException {
+        File loose = new File(LOOSE_DIR, sha);
+        if (loose.isFile()) {
+            return new InflaterInputStream(new FileInputStream(loose));
+        }
+        File plain = plainFile(sha);
+        if (plain != null) {
+            return new FileInputStream(plain);
+        }
+        return new ByteArrayInputStream(read(sha));
+    }
+
+    /** Stores the contents of SOURCE as a blob, unless the store already
+     * has it, and returns its id. SOURCE is read once: each chunk is
+     * hashed and written to a temporary file, which is then renamed to
+     * the id. A blob of at least PLAIN_MIN_SIZE bytes whose samples
+     * deflate barely shrinks is copied plain, so that checkout can hand
+     * it to the Materializer without inflating it; any other blob is
+     * deflated. */
+    static String writeFile(File source) {
+        try {
+            long size = source.length();
+            if (size >= PLAIN_MIN_SIZE && incompressible(source, size)) {
+                return writePlain(source);
+            }
+            try (InputStream in = new FileInputStream(source)) {
+                return write(in);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns true if deflate would barely shrink SOURCE, of SIZE bytes
+     * (at least PLAIN_MIN_SIZE), judging by SAMPLES pieces of SAMPLE_SIZE
+     * bytes spread evenly through it, from its start to its end. */
+    private static boolean incompressible(File source, long size)
+        throws IOException {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        byte[] buffer = new byte[SAMPLE_SIZE];
+        long compressed = 0;
+        Deflater deflater = new Deflater();
+        try (RandomAccessFile in = new RandomAccessFile(source, "r")) {
+            for (int i = 0; i < SAMPLES; i += 1) {
+                in.seek((size - SAMPLE_SIZE) * i / (SAMPLES - 1));
+                in.readFully(sample);
+                deflater.reset();
+                deflater.setInput(sample);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed += deflater.deflate(buffer);
+                }
+            }
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            deflater.end();
+        }
+        long sampled = (long) SAMPLES * SAMPLE_SIZE;
+        return compressed > sampled - sampled / MIN_SAVING;
+    }
+
+    /** Stores the contents of SOURCE as a plain blob, unless the store
+     * already has it, and returns its id. SOURCE is hashed as it is
+     * copied to a temporary file, which is synced and renamed to the id. */
+    private static String writePlain(File source) throws IOException {
+        PLAIN_DIR.mkdirs();
+        File temp = File.createTempFile(TEMP_PREFIX, null, PLAIN_DIR);
+        MessageDigest md = Utils.sha1Digest();
+        String sha;
+        boolean known;
+        try (InputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+            sha = Utils.hex(md.digest());
+            known = contains(sha);
+            if (!known) {
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (known) {
+            temp.delete();
+        } else {
+            Files.move(temp.toPath(), new File(PLAIN_DIR, sha).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            StateLog.added(PLAIN_DIR);
+        }
+        return sha;
+    }
+
+    /** Stores CONTENTS as a loose object, unless the store already has it,
+     * and returns its id. */
+    static String write(byte[] contents) {
+        try {
+            return write(new ByteArrayInputStream(contents));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Stores everything read from IN as a loose blob, unless the store
+     * already has it, and returns its id. A new blob is synced before it
+     * is renamed into place, so no crash leaves a blob under its id with
+     * only part of its contents. */
+    private static String write(InputStream in) throws IOException {
+        LOOSE_DIR.mkdirs();
+        File temp = File.createTempFile(TEMP_PREFIX, null, LOOSE_DIR);
+        MessageDigest md = Utils.sha1Digest();
+        String sha;
+        boolean known;
+        FileOutputStream file = new FileOutputStream(temp);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+            sha = Utils.hex(md.digest());
+            known = contains(sha);
+            if (!known) {
+                out.finish();
+                file.getFD().sync();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (known) {
+            temp.delete();
+        } else {
+            Files.move(temp.toPath(), new File(LOOSE_DIR, sha).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            StateLog.added(LOOSE_DIR);
+        }
+        return sha;
+    }
+
+    /** Returns the ids of every blob in the store, loose or packed. */
+    static List<String> allIds() {
+        TreeSet<String> ids = new TreeSet<String>();
+        ids.addAll(looseIds(LOOSE_DIR));
+        ids.addAll(looseIds(PLAIN_DIR));
+        for (Pack pack : packs()) {
+            ids.addAll(pack.ids());
+        }
+        return new ArrayList<String>(ids);
+    }
+
+    /** Packs every blob in the store into a single new pack and removes
+     * the loose copies and old packs. Successive versions of the same file
+     * name, in commit order, are stored as deltas against each other when
+     * that saves at least half the space, up to MAX_DEPTH deltas deep.
+     * Plain blobs of at least PLAIN_MIN_SIZE bytes stay as they are. The
+     * new pack is synced before any copy it replaces is removed. */
+    static void repack() {
+        repack(new HashSet<String>());
+    }
+
+    /** Repacks the store as repack does, leaving out the blobs DROPPED. */
+    private static void repack(Set<String> dropped) {
+        List<String> loose = looseIds(LOOSE_DIR);
+        List<String> plain = looseIds(PLAIN_DIR);
+        ArrayList<String> large = new ArrayList<String>();
+        for (String sha : plain) {
+            if (new File(PLAIN_DIR, sha).length() >= PLAIN_MIN_SIZE) {
+                large.add(sha);
+            }
+        }
+        plain.removeAll(large);
+        List<Pack> oldPacks = packs();
+        if (dropped.isEmpty() && loose.isEmpty() && plain.isEmpty()
+                && oldPacks.size() <= 1) {
+            return;
+        }
+        List<String> ids = allIds();
+        ids.removeAll(dropped);
+        ids.removeAll(large);
+        HashSet<String> remaining = new HashSet<String>(ids);
+        HashMap<String, Long> stored = storedTimes(oldPacks);
+        PACK_DIR.mkdirs();
+        String packName;
+        try {
+            Pack.Writer writer = new Pack.Writer(PACK_DIR, Utils.sha1(
+                    String.join(" ", ids)));
+            HashMap<String, Integer> depths = new HashMap<String, Integer>();
+            for (LinkedHashSet<String> versions : fileHistories().values()) {
+                String prev = null;
+                byte[] prevContents = null;
+                for (String sha : versions) {
+                    if (!depths.containsKey(sha) && !remaining.contains(sha)) {
+                        continue;
+                    }
+                    byte[] contents = read(sha);
+                    if (remaining.remove(sha)) {
+                        String base = null;
+                        byte[] data = contents;
+                        if (prev != null && depths.get(prev) < MAX_DEPTH) {
+                            byte[] delta = Delta.create(prevContents, contents);
+                            if (delta.length < contents.length / 2) {
+                                base = prev;
+                                data = delta;
+                            }
+                        }
+                        writer.add(sha, data, base, stored.get(sha));
+                        depths.put(sha, base == null ? 0 : depths.get(base) + 1);
+                    }
+                    prev = sha;
+                    prevContents = contents;
+                }
+            }
+            for (String sha : ids) {
+                if (remaining.contains(sha)) {
+                    writer.add(sha, read(sha), null, stored.get(sha));
+                }
+            }
+            packName = writer.close();
+        } catch (IOException e) {
+            System.out.println("IOException while writing the pack.");
+            return;
+        }
+        for (Pack pack : oldPacks) {
+            if (!pack.getName().equals(packName)) {
+                pack.delete();
+            }
+        }
+        for (String sha : loose) {
+            new File(LOOSE_DIR, sha).delete();
+        }
+        for (String sha : plain) {
+            new File(PLAIN_DIR, sha).delete();
+        }
+        packs = null;
+    }
+
+    /** Returns the id of every blob in the store mapped to the time it was
+     * first stored: the earliest time kept for it by any of PACKS, or the
+     * time of its loose file. */
+    private static HashMap<String, Long> storedTimes(List<Pack> packs) {
+        HashMap<String, Long> times = new HashMap<String, Long>();
+        for (Pack pack : packs) {
+            for (String sha : pack.ids()) {
+                times.merge(sha, pack.stored(sha), Math::min);
+            }
+        }
+        for (File dir : new File[] {LOOSE_DIR, PLAIN_DIR}) {
+            for (String sha : looseIds(dir)) {
+                times.merge(sha, new File(dir, sha).lastModified(),
+                        Math::min);
+            }
+        }
+        return times;
+    }
+
+    /** Removes every blob not in LIVE that was stored before CUTOFF, in
+     * milliseconds since the epoch, along with temporary files left from
+     * writes that never finished and files whose names are not ids at
+     * all. Packs holding such blobs are repacked without them. If DRYRUN,
+     * nothing is removed. Returns the number of blobs removed, the bytes
+     * they took up and the number of files deleted. */
+    static long[] prune(Set<String> live, long cutoff, boolean dryRun) {
+        long[] removed = new long[3];
+        HashSet<String> kept = new HashSet<String>();
+        HashSet<String> dropped = new HashSet<String>();
+        for (File dir : new File[] {LOOSE_DIR, PLAIN_DIR}) {
+            String[] names = dir.list();
+            for (String name : names == null ? new String[0] : names) {
+                File file = new File(dir, name);
+                boolean id = name.matches("[0-9a-f]{40}");
+                if (id && live.contains(name)
+                        || (id || name.startsWith(TEMP_PREFIX))
+                        && file.lastModified() >= cutoff) {
+                    kept.add(name);
+                    continue;
+                }
+                removed[0] += id ? 1 : 0;
+                removed[1] += file.length();
+                removed[2] += 1;
+                if (!dryRun) {
+                    file.delete();
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            for (String sha : pack.ids()) {
+                if (pack.stored(sha) >= cutoff) {
+                    kept.add(sha);
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            for (String sha : pack.ids()) {
+                if (!live.contains(sha) && !kept.contains(sha)
+                        && dropped.add(sha)) {
+                    removed[0] += 1;
+                    removed[1] += pack.size(sha);
+                }
+            }
+        }
+        if (!dryRun && !dropped.isEmpty()) {
+            repack(dropped);
+        }
+        return removed;
+    }
+
+    /** Returns the ids of the loose blobs in DIR, leaving out temporary
+     * files that are still being written. */
+    private static List<String> looseIds(File dir) {
+        ArrayList<String> ids = new ArrayList<String>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (!name.startsWith(TEMP_PREFIX)) {
+                    ids.add(name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Returns, for each file name in any commit of the log, the ids of
+     * its versions in the order the commits were made. */
+    private static TreeMap<String, LinkedHashSet<String>> fileHistories() {
+        ArrayList<Commit> commits = new ArrayList<Commit>();
+        String[] paths = new File("./.gitlet/log").list();
+        if (paths != null) {
+            for (String path : paths) {
+                commits.add(Commit.load(path));
+            }
+        }
+        commits.sort(Comparator.comparing(Commit::getTime)
+                .thenComparing(Commit::getShaCode));
+        TreeMap<String, LinkedHashSet<String>> histories =
+            new TreeMap<String, LinkedHashSet<String>>();
+        for (Commit commit : commits) {
+            for (String name : commit.getBlobsMap().keySet()) {
+                histories.computeIfAbsent(name, k -> new LinkedHashSet<String>())
+                    .add(commit.getBlobsMap().get(name));
+            }
+        }
+        return histories;
+    }
+
+    /** Returns the packs of the repository, opening them on first use. */
+    private static synchronized List<Pack> packs() {
+        if (packs == null) {
+            packs = new ArrayList<Pack>();
+            String[] names = PACK_DIR.list();
+            if (names != null) {
+                Arrays.sort(names);
+                for (String name : names) {
+                    if (name.endsWith(Pack.IDX_SUFFIX)) {
+                        packs.add(new Pack(new File(PACK_DIR, name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Directory of deflated loose blobs. */
+    private static final File LOOSE_DIR = new File("./.gitlet/Objects");
+    /** Directory of plain loose blobs: large ones that do not compress,
+     * and any written by older versions. */
+    private static final File PLAIN_DIR = new File("./.gitlet/CommitFiles");
+    /** Prefix of loose blobs that are still being written. */
+    private static final String TEMP_PREFIX = "tmp-";
+    /** Size of the buffer used to copy files into the store. */
+    private static final int BUFFER_SIZE = 65536;
+    /** Smallest blob that is kept plain if deflate does not shrink it. */
+    static final long PLAIN_MIN_SIZE = 1 << 16;
+    /** A blob kept plain must shrink by less than its size over this. */
+    private static final long MIN_SAVING = 8;
+    /** Number of pieces of a large blob deflated to judge whether to keep
+     * it plain. */
+    private static final int SAMPLES = 4;
+    /** Size of each of those pieces; PLAIN_MIN_SIZE holds them all. */
+    private static final int SAMPLE_SIZE = 1 << 14;
+    /** Directory of packs. */
+    private static final File PACK_DIR = new File("./.gitlet/pack");
+    /** Longest chain of deltas a blob may sit at the end of. */
+    private static final int MAX_DEPTH = 10;
+
+    /** The packs of the repository, once opened. */
+    private static List<Pack> packs;
+}
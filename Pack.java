@@ -0,0 +1,293 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** Packfile for Gitlet, the mini version-control system. A pack holds
+ *  many blobs in one file, each one deflated and stored either whole or
+ *  as a delta against another blob of the same pack. A sorted index file
+ *  next to it maps each blob's SHA-1 to its offset in the pack and to the
+ *  time the blob was first stored, which repacking does not change.
+ *  @author Yonas/Juno
+ */
+class Pack {
+
+    /** Opens the pack whose index file is IDX. */
+    Pack(File idx) {
+        String name = idx.getPath();
+        packFile = new File(name.substring(0, name.length()
+                - IDX_SUFFIX.length()) + PACK_SUFFIX);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(idx)))) {
+            int version = 0;
+            if (in.readInt() == IDX_MAGIC) {
+                version = in.readInt();
+            }
+            if (version != VERSION && version != IDX_VERSION) {
+                throw new IllegalArgumentException("bad pack index " + name);
+            }
+            int count = in.readInt();
+            ids = new String[count];
+            offsets = new long[count];
+            times = version == VERSION ? null : new long[count];
+            for (int i = 0; i < count; i += 1) {
+                ids[i] = in.readUTF();
+                offsets[i] = in.readLong();
+                if (times != null) {
+                    times[i] = in.readLong();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns true if this pack holds the blob SHA. */
+    boolean contains(String sha) {
+        return Arrays.binarySearch(ids, sha) >= 0;
+    }
+
+    /** Returns the ids of every blob in this pack, in sorted order. */
+    List<String> ids() {
+        return Arrays.asList(ids);
+    }
+
+    /** Returns the contents of the blob SHA, which must be in this pack.
+     * Delta bases are resolved through the object store. */
+    byte[] read(String sha) {
+        int i = Arrays.binarySearch(ids, sha);
+        if (i < 0) {
+            throw new IllegalArgumentException("no object " + sha + " in pack");
+        }
+        String base = null;
+        byte[] data;
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            in.seek(offsets[i]);
+            if (in.readByte() == DELTA) {
+                base = in.readUTF();
+            }
+            data = new byte[in.readInt()];
+            in.readFully(data);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        byte[] contents = inflate(data);
+        if (base != null) {
+            contents = Delta.apply(ObjectStore.read(base), contents);
+        }
+        return contents;
+    }
+
+    /** Returns the number of bytes the blob SHA, which must be in this
+     * pack, takes up in the pack file. */
+    long size(String sha) {
+        if (starts == null) {
+            starts = offsets.clone();
+            Arrays.sort(starts);
+        }
+        long start = offsets[Arrays.binarySearch(ids, sha)];
+        int i = Arrays.binarySearch(starts, start) + 1;
+        return (i < starts.length ? starts[i] : packFile.length()) - start;
+    }
+
+    /** Returns the time the blob SHA, which must be in this pack, was
+     * first stored, in milliseconds since the epoch. Indexes written
+     * before these times were kept give the time the pack was written. */
+    long stored(String sha) {
+        if (times == null) {
+            return packFile.lastModified();
+        }
+        return times[Arrays.binarySearch(ids, sha)];
+    }
+
+    /** Returns the file name of this pack. */
+    String getName() {
+        return packFile.getName();
+    }
+
+    /** Deletes this pack and its index. */
+    void delete() {
+        packFile.delete();
+        String name = packFile.getPath();
+        new File(name.substring(0, name.length() - PACK_SUFFIX.length())
+                + IDX_SUFFIX).delete();
+    }
+
+    /** Builds a pack named NAME in directory DIR. */
+    static class Writer {
+
+        /** Starts writing the pack DIR/pack-NAME. Nothing appears under
+         * that name until the pack is closed. */
+        Writer(File dir, String name) throws IOException {
+            this.dir = dir;
+            prefix = new File(dir, "pack-" + name).getPath();
+            file = new FileOutputStream(prefix + PACK_SUFFIX + TEMP_SUFFIX);
+            out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            offset = 2 * Integer.BYTES;
+            entries = new TreeMap<String, Long>();
+            times = new HashMap<String, Long>();
+        }
+
+        /** Adds blob SHA, first stored at time STORED, as DATA. If BASE is
+         * null, DATA is the blob's contents; otherwise it is a delta
+         * against blob BASE, which must already be in this pack. */
+        void add(String sha, byte[] data, String base, long stored)
+            throws IOException {
+            entries.put(sha, offset);
+            times.put(sha, stored);
+            if (base == null) {
+                out.writeByte(FULL);
+                offset += 1;
+            } else {
+                out.writeByte(DELTA);
+                out.writeUTF(base);
+                offset += 1 + 2 + base.length();
+            }
+            byte[] compressed = deflate(data);
+            out.writeInt(compressed.length);
+            out.write(compressed);
+            offset += Integer.BYTES + compressed.length;
+        }
+
+        /** Finishes the pack and writes its index, syncing both, then
+         * moves both into place, the index last, and syncs the directory.
+         * Once this returns, the pack survives a crash, so the copies of
+         * its blobs elsewhere may be deleted. Returns the file name of the
+         * pack. */
+        String close() throws IOException {
+            out.flush();
+            file.getFD().sync();
+            out.close();
+            FileOutputStream idxFile =
+                new FileOutputStream(prefix + IDX_SUFFIX + TEMP_SUFFIX);
+            try (DataOutputStream idx = new DataOutputStream(
+                    new BufferedOutputStream(idxFile))) {
+                idx.writeInt(IDX_MAGIC);
+                idx.writeInt(IDX_VERSION);
+                idx.writeInt(entries.size());
+                for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                    idx.writeUTF(entry.getKey());
+                    idx.writeLong(entry.getValue());
+                    idx.writeLong(times.get(entry.getKey()));
+                }
+                idx.flush();
+                idxFile.getFD().sync();
+            }
+            for (String suffix : new String[] {PACK_SUFFIX, IDX_SUFFIX}) {
+                Files.move(Paths.get(prefix + suffix + TEMP_SUFFIX),
+                        Paths.get(prefix + suffix),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            Codec.syncDir(dir);
+            return new File(prefix + PACK_SUFFIX).getName();
+        }
+
+        /** Directory of the pack. */
+        private File dir;
+        /** Path of the pack without its suffix. */
+        private String prefix;
+        /** The pack file being written. */
+        private FileOutputStream file;
+        /** Stream over the pack file being written. */
+        private DataOutputStream out;
+        /** Offset in the pack of the next blob. */
+        private long offset;
+        /** Maps the id of every blob added so far to its offset. */
+        private TreeMap<String, Long> entries;
+        /** Maps the id of every blob added so far to the time it was
+         * first stored. */
+        private HashMap<String, Long> times;
+    }
+
+    /** Returns DATA compressed with deflate. */
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Returns DATA uncompressed with inflate. */
+    static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IllegalArgumentException("truncated object");
+                }
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /** Suffix of pack files. */
+    static final String PACK_SUFFIX = ".pack";
+    /** Suffix of pack index files. */
+    static final String IDX_SUFFIX = ".idx";
+    /** Suffix of pack and index files that are still being written. */
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** First word of a pack file. */
+    private static final int PACK_MAGIC = 0x47504b31;
+    /** First word of a pack index file. */
+    private static final int IDX_MAGIC = 0x47494458;
+    /** Version of the pack format, and of index files without times. */
+    private static final int VERSION = 1;
+    /** Version of the index format. */
+    private static final int IDX_VERSION = 2;
+    /** Entry type of a blob stored whole. */
+    private static final byte FULL = 0;
+    /** Entry type of a blob stored as a delta. */
+    private static final byte DELTA = 1;
+    /** Size of the compression buffers. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The pack file. */
+    private File packFile;
+    /** Sorted blob ids. */
+    private String[] ids;
+    /** Offset in the pack file of the blob with the same index in IDS. */
+    private long[] offsets;
+    /** Time the blob with the same index in IDS was first stored, or null
+     * if the index file does not keep times. */
+    private long[] times;
+    /** The offsets of the blobs in the pack file, in order, once size
+     * has needed them. */
+    private long[] starts;
+}
@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** Append-only record files for Gitlet, the mini version-control system.
+ *  The journal, the buckets of the message index and the list of new
+ *  commit ids grow by a few records per commit. Each file starts with a
+ *  magic word and a format version, and each record carries its length
+ *  and a CRC-32 of its bytes, as in the state log, and its length again
+ *  after its bytes. A crash can only tear the last record: on read, a
+ *  torn or damaged record ends the file and is cut off, and before each
+ *  append the last record is found from the length at the end of the
+ *  file and checked, so new records never follow a torn one. These files
+ *  can all be rebuilt from the log, so they are not synced; a file found
+ *  torn is reported to the caller, which rebuilds it, since the records
+ *  cut off are lost.
+ *  @author Yonas/Juno
+ */
+class RecordFile {
+
+    /** Returns the bytes of a record whose fields are written by BODY. */
+    static byte[] encode(Codec.Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            body.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns a stream over the fields of RECORD. */
+    static DataInputStream open(byte[] record) {
+        return new DataInputStream(new ByteArrayInputStream(record));
+    }
+
+    /** Appends RECORDS to FILE, a file of the kind MAGIC in format
+     * VERSION, in one write, creating it if it is missing or empty.
+     * Returns false, writing nothing, if FILE is of another kind or
+     * version or its last record is torn, which is then cut off. */
+    static boolean append(File file, int magic, int version,
+                          List<byte[]> records) throws IOException {
+        boolean header = file.length() < HEADER_SIZE;
+        if (header && file.length() > 0) {
+            truncate(file, 0);
+        } else if (!header) {
+            Boolean sound = check(file, magic, version);
+            if (sound == null) {
+                return false;
+            } else if (!sound) {
+                read(file, magic, version);
+                return false;
+            }
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(frame(header, magic, version, records));
+        }
+        return true;
+    }
+
+    /** Replaces FILE with a file of the kind MAGIC in format VERSION that
+     * holds RECORDS. */
+    static void write(File file, int magic, int version,
+                      List<byte[]> records) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(frame(true, magic, version, records));
+        }
+    }
+
+    /** Returns every record of FILE, a file of the kind MAGIC in format
+     * VERSION. Returns null if FILE is missing, is of another kind or
+     * version, or ends in a torn or damaged record, which is cut off. */
+    static List<byte[]> read(File file, int magic, int version)
+        throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ArrayList<byte[]> records = new ArrayList<byte[]>();
+        if (bytes.length == 0) {
+            return records;
+        } else if (bytes.length < HEADER_SIZE) {
+            truncate(file, 0);
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (in.getInt() != magic || in.getInt() != version) {
+            return null;
+        }
+        int end = HEADER_SIZE;
+        while (in.remaining() >= FRAME_SIZE) {
+            int length = in.getInt();
+            int sum = in.getInt();
+            if (length < 0 || length > in.remaining() - Integer.BYTES) {
+                break;
+            }
+            byte[] record = new byte[length];
+            in.get(record);
+            if (in.getInt() != length || crc(record) != sum) {
+                break;
+            }
+            records.add(record);
+            end = in.position();
+        }
+        if (end < bytes.length) {
+            truncate(file, end);
+            return null;
+        }
+        return records;
+    }
+
+    /** Returns the bytes that hold RECORDS, each after its length and
+     * CRC-32, preceded by the file header of MAGIC and VERSION if
+     * HEADER. */
+    private static byte[] frame(boolean header, int magic, int version,
+                                List<byte[]> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (header) {
+                out.writeInt(magic);
+                out.writeInt(version);
+            }
+            for (byte[] record : records) {
+                out.writeInt(record.length);
+                out.writeInt(crc(record));
+                out.write(record);
+                out.writeInt(record.length);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the CRC-32 of RECORD. */
+    private static int crc(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    /** Returns null if FILE, which holds at least a header, does not
+     * start with MAGIC and VERSION, true if it holds only the header or
+     * ends with a complete record, and false otherwise. Only the header
+     * and the last record are read. */
+    private static Boolean check(File file, int magic, int version)
+        throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.readInt() != magic || in.readInt() != version) {
+                return null;
+            }
+            long size = in.length();
+            if (size == HEADER_SIZE) {
+                return true;
+            } else if (size < HEADER_SIZE + FRAME_SIZE) {
+                return false;
+            }
+            in.seek(size - Integer.BYTES);
+            int length = in.readInt();
+            long start = size - FRAME_SIZE - length;
+            if (length < 0 || start < HEADER_SIZE) {
+                return false;
+            }
+            in.seek(start);
+            if (in.readInt() != length) {
+                return false;
+            }
+            int sum = in.readInt();
+            byte[] record = new byte[length];
+            in.readFully(record);
+            return crc(record) == sum;
+        }
+    }
+
+    /** Cuts FILE off after its first LENGTH bytes. */
+    private static void truncate(File file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    /** Size of the file header. */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    /** Size of the length, CRC-32 and trailing length around a record. */
+    private static final int FRAME_SIZE = 3 * Integer.BYTES;
+}
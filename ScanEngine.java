@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/** Parallel file work for Gitlet, the mini version-control system.
+ *  Hashes or copies a list of files on a bounded fork/join pool and
+ *  returns any results in the order of the list, so callers print exactly
+ *  what a one-at-a-time scan would. The number of threads comes from the
+ *  system property gitlet.parallelism or the environment variable
+ *  GITLET_PARALLELISM, and defaults to the number of processors; a value
+ *  of 1 does the work sequentially on the calling thread.
+ *  @author Yonas/Juno
+ */
+class ScanEngine {
+
+    /** Returns the SHA-1 of the contents of each of FILES, in order. */
+    static String[] sha1(List<File> files) {
+        String[] result = new String[files.size()];
+        forEach(result.length, i -> result[i] = Utils.sha1(files.get(i)));
+        return result;
+    }
+
+    /** Runs ACTION on each of the positions 0 .. COUNT-1, spread over the
+     * pool unless there is a single position or a single thread. */
+    static void forEach(int count, IntConsumer action) {
+        if (parallelism() <= 1 || count < 2) {
+            for (int i = 0; i < count; i += 1) {
+                action.accept(i);
+            }
+        } else {
+            pool().invoke(new Task(action, 0, count));
+        }
+    }
+
+    /** Returns the number of threads used for hashing. */
+    static int parallelism() {
+        String value = System.getProperty("gitlet.parallelism",
+                System.getenv("GITLET_PARALLELISM"));
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                return 1;
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Returns the pool hashing runs on, creating it on first use. */
+    private static ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism());
+        }
+        return pool;
+    }
+
+    /** Runs an action over a range of positions, splitting the range in
+     * half until each piece is small enough to run directly. */
+    private static class Task extends RecursiveAction {
+
+        /** A task that runs ACTION on positions FROM .. TO-1. */
+        Task(IntConsumer action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FILES_PER_TASK) {
+                for (int i = from; i < to; i += 1) {
+                    action.accept(i);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Task(action, from, mid),
+                          new Task(action, mid, to));
+            }
+        }
+
+        /** The work done at each position. */
+        private final IntConsumer action;
+        /** First position of this task's range. */
+        private final int from;
+        /** End of this task's range. */
+        private final int to;
+        /** Version of a task's serialized form. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Largest number of files handled by one task without splitting. */
+    private static final int FILES_PER_TASK = 4;
+
+    /** The hashing pool, once created. */
+    private static ForkJoinPool pool;
+}
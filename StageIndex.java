@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Staging area for Gitlet, the mini version-control system. The files
+ *  staged for the next commit are kept in the object store, so the stage
+ *  itself is one small file, .gitlet/index, listing each staged path with
+ *  the id of its blob, or with a flag if it is staged for removal. The
+ *  same entries end every record of the state log, so a command that
+ *  changes the stage and the head together keeps both or neither; the
+ *  index file is only written at a checkpoint.
+ *  Repositories from before the index, which kept copies of staged files
+ *  in .gitlet/stage and markers in .gitlet/RemovedFiles, are converted
+ *  the first time the stage is read.
+ *  @author Yonas/Juno
+ */
+class StageIndex {
+
+    /** Creates an empty stage. */
+    private StageIndex() {
+        entries = new TreeMap<String, String>();
+    }
+
+    /** Returns the stage of the current repository, reading it from disk
+     * the first time it is needed. */
+    static StageIndex get() {
+        if (index == null) {
+            index = new StageIndex();
+            if (INDEX_FILE.exists()) {
+                index.read();
+            } else if (OLD_STAGE_DIR.exists() || OLD_REMOVED_DIR.exists()) {
+                index.migrate();
+            }
+        }
+        return index;
+    }
+
+    /** Replaces the stage with the one read from IN, the end of a state
+     * record, which is newer than the index file. */
+    static void recover(DataInputStream in) throws IOException {
+        index = new StageIndex();
+        index.readEntries(in);
+        index.changed = true;
+    }
+
+    /** Writes the stage to the index file and syncs it, if it was loaded
+     * and changed, before a checkpoint empties the state log. */
+    static void checkpoint() throws IOException {
+        if (index != null && index.changed) {
+            index.write();
+        }
+    }
+
+    /** Drops the stage held in memory, so the next command reads it from
+     * disk again. */
+    static void reload() {
+        index = null;
+    }
+
+    /** Returns the paths staged to be added, in order. */
+    List<String> staged() {
+        ArrayList<String> paths = new ArrayList<String>();
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            if (e.getValue() != null) {
+                paths.add(e.getKey());
+            }
+        }
+        return paths;
+    }
+
+    /** Returns the paths staged for removal, in order. */
+    List<String> removed() {
+        ArrayList<String> paths = new ArrayList<String>();
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            if (e.getValue() == null) {
+                paths.add(e.getKey());
+            }
+        }
+        return paths;
+    }
+
+    /** Returns every staged path mapped to the id of its staged blob, or
+     * to null if it is staged for removal: the changes the next commit
+     * makes to the head's tree. */
+    HashMap<String, String> changes() {
+        return new HashMap<String, String>(entries);
+    }
+
+    /** Returns true if nothing is staged. */
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /** Returns the id of the blob staged for PATH, or null if PATH is not
+     * staged to be added. */
+    String sha(String path) {
+        return entries.get(path);
+    }
+
+    /** Returns true if PATH is staged for removal. */
+    boolean isRemoved(String path) {
+        return entries.containsKey(path) && entries.get(path) == null;
+    }
+
+    /** Stages the blob SHA, which must be in the object store, as PATH. */
+    void add(String path, String sha) {
+        put(path, sha);
+    }
+
+    /** Stages PATH for removal. */
+    void remove(String path) {
+        put(path, null);
+    }
+
+    /** Takes PATH off the stage, whatever was staged for it. */
+    void unstage(String path) {
+        if (entries.containsKey(path)) {
+            entries.remove(path);
+            changed = true;
+        }
+    }
+
+    /** Takes everything off the stage. */
+    void clear() {
+        if (!entries.isEmpty()) {
+            entries.clear();
+            changed = true;
+        }
+    }
+
+    /** Maps PATH to SHA, which is null for a removal. */
+    private void put(String path, String sha) {
+        if (!entries.containsKey(path) || !equal(entries.get(path), sha)) {
+            entries.put(path, sha);
+            changed = true;
+        }
+    }
+
+    /** Returns true if the ids A and B, either of which may be null, are
+     * the same. */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** Writes the number of entries and then each entry to OUT. */
+    void writeEntries(DataOutputStream out) throws IOException {
+        out.writeInt(entries.size());
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            out.writeUTF(e.getKey());
+            if (e.getValue() == null) {
+                out.writeByte(REMOVED);
+            } else {
+                out.writeByte(ADDED);
+                out.writeUTF(e.getValue());
+            }
+        }
+    }
+
+    /** Reads entries written by writeEntries from IN. */
+    private void readEntries(DataInputStream in) throws IOException {
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String path = in.readUTF();
+            entries.put(path, in.readByte() == REMOVED ? null
+                    : in.readUTF());
+        }
+    }
+
+    /** Reads the entries from the index file. */
+    private void read() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(INDEX_FILE)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("bad stage index");
+            }
+            readEntries(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Writes the entries to a temporary file, syncs it and renames it
+     * over the index file, so a crash leaves either the old stage or the
+     * new. */
+    private void write() throws IOException {
+        File temp = new File(INDEX_FILE.getPath() + ".tmp");
+        FileOutputStream file = new FileOutputStream(temp);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeEntries(out);
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        try {
+            Files.move(temp.toPath(), INDEX_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        StateLog.added(INDEX_FILE.getParentFile());
+        changed = false;
+    }
+
+    /** Stages what the old stage directories held, storing the staged
+     * copies as blobs, then writes the index and removes the directories. */
+    private void migrate() {
+        for (String path : Main.filesIn(OLD_STAGE_DIR)) {
+            add(path, ObjectStore.writeFile(new File(OLD_STAGE_DIR, path)));
+        }
+        for (String path : Main.filesIn(OLD_REMOVED_DIR)) {
+            remove(path);
+        }
+        try {
+            write();
+        } catch (IOException e) {
+            System.out.println("IOException while saving the stage.");
+            return;
+        }
+        for (File dir : new File[] {OLD_STAGE_DIR, OLD_REMOVED_DIR}) {
+            for (String path : Main.filesIn(dir)) {
+                Main.deleteFile(dir, path);
+            }
+            dir.delete();
+        }
+    }
+
+    /** The index file. */
+    private static final File INDEX_FILE = new File("./.gitlet/index");
+    /** Directory of the copies of staged files, in older repositories. */
+    private static final File OLD_STAGE_DIR = new File("./.gitlet/stage");
+    /** Directory marking the files staged for removal, in older
+     * repositories. */
+    private static final File OLD_REMOVED_DIR =
+        new File("./.gitlet/RemovedFiles");
+    /** First word of the index file. */
+    private static final int MAGIC = 0x47535447;
+    /** Version of the index format. */
+    private static final int VERSION = 1;
+    /** Flag of a path staged to be added. */
+    private static final byte ADDED = 0;
+    /** Flag of a path staged for removal. */
+    private static final byte REMOVED = 1;
+
+    /** The stage of the current repository, once loaded. */
+    private static StageIndex index;
+
+    /** Maps each staged path to the id of its blob, or to null if it is
+     * staged for removal. */
+    private TreeMap<String, String> entries;
+    /** True if entries differ from the file on disk. */
+    private boolean changed;
+}
@@ -0,0 +1,244 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Stat cache for Gitlet, the mini version-control system. Remembers the
+ *  size, modification time, inode and SHA-1 of every file that has been
+ *  hashed, in the binary file .gitlet/statcache, so that a file whose stat
+ *  data has not changed since does not have to be read and hashed again.
+ *  @author Yonas/Juno
+ */
+class StatCache {
+
+    /** Creates an empty stat cache. */
+    private StatCache() {
+        entries = new HashMap<String, Entry>();
+        used = new HashSet<String>();
+    }
+
+    /** Returns the stat cache of the current repository, reading it from
+     * disk the first time it is needed. */
+    static StatCache get() {
+        if (cache == null) {
+            cache = new StatCache();
+            if (CACHE_FILE.exists()) {
+                cache.read();
+            }
+        }
+        return cache;
+    }
+
+    /** Writes the stat cache back to disk if it was loaded and changed. */
+    static void save() {
+        if (cache != null && cache.changed) {
+            cache.write();
+        }
+    }
+
+    /** Saves the stat cache if it changed and starts a new run, forgetting
+     * which paths were looked up. The daemon calls this after each
+     * command, so that a file deleted since is dropped from the cache. */
+    static void reset() {
+        save();
+        if (cache != null) {
+            cache.used.clear();
+        }
+    }
+
+    /** Returns the SHA-1 of the contents of FILE, which must be a normal
+     * file. The contents are only read if FILE's stat data differs from
+     * what was cached, or if the cached entry is racy. */
+    String sha1(File file) {
+        return sha1(Collections.singletonList(file)).get(file);
+    }
+
+    /** Returns the SHA-1 of the contents of each of FILES, which must be
+     * normal files. Files whose stat data matches the cache are not read;
+     * the rest are hashed together by the ScanEngine. */
+    HashMap<File, String> sha1(List<File> files) {
+        HashMap<File, String> result = new HashMap<File, String>();
+        ArrayList<File> stale = new ArrayList<File>();
+        ArrayList<Entry> stats = new ArrayList<Entry>();
+        for (File file : files) {
+            String key = file.getPath();
+            used.add(key);
+            Entry stat = stat(file);
+            Entry cached = entries.get(key);
+            if (cached != null && cached.sameStat(stat)) {
+                result.put(file, cached.sha);
+            } else {
+                stale.add(file);
+                stats.add(stat);
+            }
+        }
+        String[] shas = ScanEngine.sha1(stale);
+        for (int i = 0; i < shas.length; i += 1) {
+            String key = stale.get(i).getPath();
+            Entry stat = stats.get(i);
+            stat.sha = shas[i];
+            if (!isRacy(stat)) {
+                entries.put(key, stat);
+                changed = true;
+            } else if (entries.remove(key) != null) {
+                changed = true;
+            }
+            result.put(stale.get(i), shas[i]);
+        }
+        return result;
+    }
+
+    /** Returns true if ENTRY's file was modified so recently that another
+     * change within the same timestamp tick could go unnoticed. Such
+     * entries are not cached, so the file is hashed again next time. */
+    private static boolean isRacy(Entry entry) {
+        long modified = TimeUnit.NANOSECONDS.toMillis(entry.mtime);
+        return System.currentTimeMillis() - modified < RACY_MILLIS;
+    }
+
+    /** Returns the stat data of FILE, without a SHA-1. */
+    private static Entry stat(File file) {
+        Path path = file.toPath();
+        Entry entry = new Entry();
+        try {
+            try {
+                Map<String, Object> attrs =
+                    Files.readAttributes(path, "unix:size,lastModifiedTime,ino");
+                entry.size = (Long) attrs.get("size");
+                entry.mtime = ((FileTime) attrs.get("lastModifiedTime"))
+                        .to(TimeUnit.NANOSECONDS);
+                entry.inode = (Long) attrs.get("ino");
+            } catch (UnsupportedOperationException e) {
+                BasicFileAttributes attrs =
+                    Files.readAttributes(path, BasicFileAttributes.class);
+                entry.size = attrs.size();
+                entry.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+                entry.inode = 0;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return entry;
+    }
+
+    /** Reads every entry of the stat cache file. */
+    private void read() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(CACHE_FILE)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                Entry entry = new Entry();
+                entry.size = in.readLong();
+                entry.mtime = in.readLong();
+                entry.inode = in.readLong();
+                entry.sha = in.readUTF();
+                entries.put(key, entry);
+            }
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    /** Writes the stat cache file, dropping entries for files that were not
+     * looked at in this run and no longer exist. The new file replaces the
+     * old one in a single rename. */
+    private void write() {
+        Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            String key = iter.next().getKey();
+            if (!used.contains(key) && !new File(key).isFile()) {
+                iter.remove();
+            }
+        }
+        File temp = new File(CACHE_FILE.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().mtime);
+                out.writeLong(e.getValue().inode);
+                out.writeUTF(e.getValue().sha);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), CACHE_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } catch (IOException e) {
+            temp.delete();
+        }
+    }
+
+    /** Cached stat data and SHA-1 of one file. */
+    private static class Entry {
+        /** Size in bytes. */
+        private long size;
+        /** Modification time in nanoseconds. */
+        private long mtime;
+        /** Inode number, or 0 where the file system has none. */
+        private long inode;
+        /** SHA-1 of the contents. */
+        private String sha;
+
+        /** Returns true if OTHER has the same stat data as this entry. */
+        boolean sameStat(Entry other) {
+            return size == other.size && mtime == other.mtime
+                    && inode == other.inode;
+        }
+    }
+
+    /** The stat cache file. */
+    private static final File CACHE_FILE = new File("./.gitlet/statcache");
+    /** First word of the stat cache file. */
+    private static final int MAGIC = 0x53544348;
+    /** Version of the entry format. */
+    private static final int VERSION = 1;
+    /** Files modified less than this many milliseconds before they were
+     * hashed are not cached, to cover coarse file system timestamps. */
+    private static final long RACY_MILLIS = 2000;
+
+    /** The stat cache of the current repository, once loaded. */
+    private static StatCache cache;
+
+    /** Maps a file's path to its cached entry. */
+    private HashMap<String, Entry> entries;
+    /** Paths looked up during this run. */
+    private HashSet<String> used;
+    /** True if entries differ from the file on disk. */
+    private boolean changed;
+}
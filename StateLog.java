@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.zip.CRC32;
+
+/** Write-ahead log for Gitlet, the mini version-control system. Every
+ *  command that changes the head, the branches, the current branch or the
+ *  stage appends one record holding all four to .gitlet/state-log and syncs
+ *  it once, so the files that hold the last checkpoint are never caught
+ *  half written. Each record carries its length and a CRC-32 of its
+ *  contents; on open the last complete record wins over the checkpoint,
+ *  and a torn record left by a crash is cut off. The commits and objects
+ *  a record refers to are synced when they are written, and the
+ *  directories they were added to are synced before the record is, so
+ *  a record that survives a crash never names a file that did not.
+ *  @author Yonas/Juno
+ */
+class StateLog {
+
+    /** Appends STATE, the encoded head, branches, current branch and
+     * stage, to the log as one record and syncs it. Returns the number of
+     * records now in the log. */
+    static int append(byte[] state) throws IOException {
+        syncDirs();
+        CRC32 crc = new CRC32();
+        crc.update(state);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (LOG_FILE.length() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(Codec.VERSION);
+            }
+            out.writeInt(state.length);
+            out.writeInt((int) crc.getValue());
+            out.write(state);
+        }
+        try (FileChannel channel = FileChannel.open(LOG_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        records += 1;
+        return records;
+    }
+
+    /** Returns the state in the last complete record of the log, or null
+     * if it has none and the checkpoint is current. Anything after the
+     * last complete record is cut off, so later records follow it. */
+    static byte[] recover() throws IOException {
+        records = 0;
+        if (!LOG_FILE.exists()) {
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(LOG_FILE.toPath());
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        byte[] last = null;
+        int end = 0;
+        if (bytes.length >= HEADER_SIZE && in.getInt() == MAGIC
+                && in.getInt() == Codec.VERSION) {
+            end = HEADER_SIZE;
+            while (in.remaining() >= HEADER_SIZE) {
+                int length = in.getInt();
+                int sum = in.getInt();
+                if (length < 0 || length > in.remaining()) {
+                    break;
+                }
+                byte[] state = new byte[length];
+                in.get(state);
+                CRC32 crc = new CRC32();
+                crc.update(state);
+                if ((int) crc.getValue() != sum) {
+                    break;
+                }
+                last = state;
+                end = in.position();
+                records += 1;
+            }
+        }
+        if (end < bytes.length) {
+            try (FileChannel channel = FileChannel.open(LOG_FILE.toPath(),
+                    StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        }
+        return last;
+    }
+
+    /** Notes that a synced file was just added to DIR, so that DIR is
+     * synced before the next record, which may refer to the file. */
+    static synchronized void added(File dir) {
+        dirs.add(dir.getAbsoluteFile());
+    }
+
+    /** Syncs every directory a file was added to since the last record. */
+    private static synchronized void syncDirs() throws IOException {
+        for (File dir : dirs) {
+            Codec.syncDir(dir);
+        }
+        dirs.clear();
+    }
+
+    /** Empties the log, once its last record has been checkpointed and
+     * the directories of any files the checkpoint renamed are synced. */
+    static void clear() throws IOException {
+        syncDirs();
+        LOG_FILE.delete();
+        records = 0;
+    }
+
+    /** The log file. */
+    private static final File LOG_FILE = new File("./.gitlet/state-log");
+    /** First word of the log file. */
+    private static final int MAGIC = 0x47574c47;
+    /** Size of the file header, and of the header of each record. */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /** Number of records in the log. */
+    private static int records;
+    /** Directories files were added to since the last record. */
+    private static HashSet<File> dirs = new HashSet<File>();
+}
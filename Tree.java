@@ -1,5 +1,8 @@
 package gitlet;
 import java.util.LinkedHashMap;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 /** Tree class for Gitlet, the mini version-control system.
@@ -13,6 +16,23 @@ public class Tree implements Serializable {
         branches.put(branch, initCommit.getShaCode());
     }
 
+    /** Creates a Tree with no branches, for read to fill in. */
+    private Tree() {
+        branches = new LinkedHashMap<String, String>();
+    }
+
+    /** Writes the branches, in order, to OUT. */
+    void write(DataOutputStream out) throws IOException {
+        Codec.writeMap(out, branches);
+    }
+
+    /** Returns a Tree read from IN, in the form write writes. */
+    static Tree read(DataInputStream in) throws IOException {
+        Tree tree = new Tree();
+        Codec.readMap(in, tree.branches);
+        return tree;
+    }
+
     /** Takes in the name of the new branch BRANCH and adds it to 
      * the branches hashset where key = BRANCH, and val = HEAD. */
     public void makeBranch(String branch, Commit head) {
@@ -33,4 +53,11 @@ public class Tree implements Serializable {
      * The key is the branch name, and the value is a commit's sha1. Will be
      * useful for checking out a branch. */
     private LinkedHashMap<String, String> branches;
+
+    /** First word of a saved Tree. */
+    static final int MAGIC = 0x4742524e;
+    /** Version of the serialized form of a Tree, which older repositories
+     * still hold. It is the one Java computed for the class as it was when
+     * those repositories were written. */
+    private static final long serialVersionUID = 8505097703788857990L;
 }
@@ -3,13 +3,16 @@ package gitlet;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -23,27 +26,93 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return hex(md.digest());
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  The file is read through a channel in fixed-size
+     *  pieces, and large files are mapped into memory a region at a time,
+     *  so memory use does not grow with the size of FILE.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        MessageDigest md = sha1Digest();
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_REGION) {
+                    md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                          Math.min(MAP_REGION, size - pos)));
+                }
+            } else {
+                ByteBuffer buffer = BUFFER.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return hex(md.digest());
+    }
+
+    /** Returns this thread's SHA-1 digest, reset and ready for use. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns the lower-case hexadecimal form of the bytes of DIGEST. */
+    static String hex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
         }
+        return new String(result);
     }
 
+    /** One SHA-1 digest per thread, so that hashing never has to look up
+     *  the algorithm again. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support "
+                                                   + "SHA-1");
+            }
+        });
+
+    /** Hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /** Size of the per-thread read buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Files at least this large are hashed through memory maps. */
+    private static final long MAP_THRESHOLD = 1 << 22;
+    /** Size of each mapped region of a large file. */
+    private static final long MAP_REGION = 1 << 26;
+
+    /** One read buffer per thread for streaming small files. */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -119,6 +188,55 @@ class Utils {
         }
     }
 
+    /** Copy the contents of SOURCE, which must be a normal file, to DEST,
+     *  creating or overwriting it, and its directory, as needed.  The bytes
+     *  move between the two channels without being collected in memory.
+     *  Throws IllegalArgumentException in case of problems. */
+    static void copy(File source, File dest) {
+        if (!source.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        if (dest.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        makeParent(dest);
+        try (FileChannel in = FileChannel.open(source.toPath());
+             FileChannel out = FileChannel.open(dest.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; ) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy everything that can be read from IN to DEST, creating or
+     *  overwriting it, and its directory, as needed, using a fixed-size
+     *  buffer.  Throws IllegalArgumentException in case of problems. */
+    static void copy(InputStream in, File dest) {
+        if (dest.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        makeParent(dest);
+        try {
+            Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Create the directory FILE is in, and its parents, if they do not
+     *  exist yet. */
+    static void makeParent(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+    }
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */